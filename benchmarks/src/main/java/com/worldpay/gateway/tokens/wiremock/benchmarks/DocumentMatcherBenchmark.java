@@ -0,0 +1,96 @@
+package com.worldpay.gateway.tokens.wiremock.benchmarks;
+
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.common.SingleRootFileSource;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.google.common.collect.ImmutableList;
+import com.worldpay.gateway.tokens.wiremock.extension.matchers.DocumentMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares a request body with a single stub's document matchers: a set of
+ * XPath expressions, an inline reference document, or a reference document
+ * file. The reference documents have the same structure as the request, so
+ * the whole comparison is made.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentMatcherBenchmark {
+
+    @Param({"xpath", "xmlLike", "xmlLikeFile"})
+    public String matcherType;
+
+    @Param({"1KB", "10KB", "100KB", "1MB"})
+    public String payloadSize;
+
+    private File filesRoot;
+    private FileSource fileSource;
+    private Parameters parameters;
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws IOException {
+        filesRoot = Files.createTempDirectory("document-matcher-benchmark").toFile();
+        fileSource = new SingleRootFileSource(filesRoot);
+        body = Payloads.orderRequest("ORDER-1", payloadSize);
+
+        String reference = Payloads.orderRequest("REFERENCE", Payloads.sizeInBytes(payloadSize));
+        switch (matcherType) {
+            case "xpath":
+                parameters = Parameters.one("xpath", ImmutableList.of(
+                        "/paymentService/submit/order[@orderCode='ORDER-1']",
+                        "/paymentService/submit/order/paymentDetails/VISA-SSL/cardNumber",
+                        "/paymentService/submit/order/createToken[@tokenScope='shopper']"));
+                break;
+            case "xmlLike":
+                parameters = Parameters.one("xmlLike", reference);
+                break;
+            case "xmlLikeFile":
+                // reference documents are looked up under __files, like body files
+                File files = new File(filesRoot, "__files");
+                files.mkdir();
+                Files.write(new File(files, "reference.xml").toPath(), reference.getBytes(UTF_8));
+                parameters = Parameters.one("xmlLikeFile", "reference.xml");
+                break;
+            default:
+                throw new IllegalArgumentException(matcherType);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        new File(filesRoot, "__files/reference.xml").delete();
+        new File(filesRoot, "__files").delete();
+        filesRoot.delete();
+    }
+
+    /**
+     * @return true, as the request always matches
+     */
+    @Benchmark
+    public boolean match() throws Exception {
+        return new DocumentMatcher(fileSource, new BenchmarkRequest(body), parameters).match().isExactMatch();
+    }
+}
@@ -0,0 +1,65 @@
+package com.worldpay.gateway.tokens.wiremock.benchmarks;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.worldpay.gateway.tokens.wiremock.extension.HelperSource;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.XmlParsers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls each of the template helpers directly.
+ *
+ * <p>{@code xpath} is called against one document throughout, as a template
+ * does when it refers to the same part of a request more than once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HelperSourceBenchmark {
+
+    @Param({"1KB", "10KB", "100KB", "1MB"})
+    public String payloadSize;
+
+    private HelperSource helperSource;
+    private Document document;
+
+    @Setup
+    public void setUp() throws Exception {
+        helperSource = new HelperSource();
+        document = XmlParsers.parse(new InputSource(
+                new ByteArrayInputStream(Payloads.orderRequest("ORDER-1", payloadSize))));
+    }
+
+    @Benchmark
+    public String xpath() throws IOException {
+        return helperSource.xpath(document, "/paymentService/submit/order/@orderCode");
+    }
+
+    @Benchmark
+    public String randomDigits() {
+        return helperSource.randomDigits(16);
+    }
+
+    @Benchmark
+    public Handlebars.SafeString xmlDate() {
+        return helperSource.xmlDate(30);
+    }
+}
@@ -0,0 +1,315 @@
+package com.worldpay.gateway.tokens.wiremock.benchmarks;
+
+import com.github.tomakehurst.wiremock.standalone.WireMockServerRunner;
+import com.worldpay.gateway.tokens.wiremock.WpgWireMockServerRunner;
+import com.worldpay.gateway.tokens.wiremock.extension.WpgRequestMatcher;
+import com.worldpay.gateway.tokens.wiremock.extension.WpgResponseTemplateTransformer;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Measures the capacity of the whole simulator: WireMock serving a generated
+ * stub set through the wpgMatcher and wpg-response-template extensions, over
+ * HTTP on localhost.
+ *
+ * <p>The stub set has one stub per order code, each selecting its order with
+ * an XPath expression and replying from a templated body file. A number of
+ * concurrent clients post orders for randomly chosen stubs, each sending its
+ * next request as soon as it has read the last response. After a warm-up,
+ * latencies are recorded for the length of the run, then requests per second
+ * and latency percentiles are printed, and the latency histogram for each
+ * second is written to a log which HdrHistogram's tools can read.
+ *
+ * <p>Because each client waits for its response before sending the next
+ * request, the latencies are those of a closed system: they show how long
+ * requests took at the throughput achieved, not at a fixed arrival rate.
+ *
+ * <p>Options, given as {@code --name value}, are {@code stubs},
+ * {@code clients}, {@code payload-size} (e.g. 1KB or 1MB), {@code warmup} and
+ * {@code duration} in seconds, {@code port}, {@code container-threads} for
+ * WireMock and {@code histogram-log}. {@code --help} lists their defaults.
+ */
+public final class LoadTest {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * The most distinct request bodies generated, however many stubs there
+     * are, to bound the memory used by large payloads.
+     */
+    private static final int MAXIMUM_DISTINCT_BODIES = 64;
+
+    private final Map<String, String> options;
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, 3);
+    private final AtomicLong errors = new AtomicLong();
+    private volatile boolean recording;
+    private volatile boolean running = true;
+
+    private LoadTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String... args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        if (options == null) {
+            printUsage(System.out);
+            return;
+        }
+
+        new LoadTest(options).run();
+    }
+
+    private void run() throws Exception {
+        int stubCount = intOption("stubs");
+        int clients = intOption("clients");
+        int warmupSeconds = intOption("warmup");
+        int durationSeconds = intOption("duration");
+        File histogramLog = new File(options.get("histogram-log"));
+
+        File rootDir = Files.createTempDirectory("wpg-load-test").toFile();
+        try {
+            writeStubs(rootDir, stubCount);
+            List<byte[]> bodies = requestBodies(stubCount, options.get("payload-size"));
+
+            WireMockServerRunner server = WpgWireMockServerRunner.start(
+                    "--port", options.get("port"),
+                    "--root-dir", rootDir.getAbsolutePath(),
+                    "--container-threads", options.get("container-threads"),
+                    "--extensions", WpgResponseTemplateTransformer.class.getName() + ","
+                            + WpgRequestMatcher.class.getName(),
+                    "--no-request-journal");
+            try {
+                String url = "http://localhost:" + server.port() + BenchmarkRequest.URL;
+                System.out.printf("Serving %d stubs at %s; %d clients, %s payloads%n",
+                        stubCount, url, clients, options.get("payload-size"));
+
+                drive(url, bodies, clients, warmupSeconds, durationSeconds, histogramLog);
+            } finally {
+                server.stop();
+            }
+        } finally {
+            deleteRecursively(rootDir);
+        }
+    }
+
+    private void drive(String url, List<byte[]> bodies, int clients, int warmupSeconds, int durationSeconds,
+                       File histogramLog) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try (CloseableHttpClient client = HttpClients.custom()
+                .setMaxConnTotal(clients)
+                .setMaxConnPerRoute(clients)
+                .build()) {
+            for (int i = 0; i < clients; i++) {
+                executor.execute(() -> sendUntilStopped(client, url, bodies));
+            }
+
+            System.out.printf("Warming up for %d s%n", warmupSeconds);
+            TimeUnit.SECONDS.sleep(warmupSeconds);
+
+            recorder.reset();
+            errors.set(0);
+            recording = true;
+            System.out.printf("Recording for %d s%n", durationSeconds);
+
+            Histogram total = record(durationSeconds, histogramLog);
+            running = false;
+
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+
+            report(total, durationSeconds, histogramLog);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void sendUntilStopped(CloseableHttpClient client, String url, List<byte[]> bodies) {
+        while (running) {
+            HttpPost post = new HttpPost(url);
+            post.setEntity(new ByteArrayEntity(bodies.get(ThreadLocalRandom.current().nextInt(bodies.size())),
+                    ContentType.create("text/xml", UTF_8)));
+
+            long start = System.nanoTime();
+            try (CloseableHttpResponse response = client.execute(post)) {
+                EntityUtils.consume(response.getEntity());
+                if (response.getStatusLine().getStatusCode() != 200) {
+                    errors.incrementAndGet();
+                }
+            } catch (IOException e) {
+                errors.incrementAndGet();
+            }
+
+            if (recording) {
+                recorder.recordValue(Math.min(System.nanoTime() - start, HIGHEST_TRACKABLE_NANOS));
+            }
+        }
+    }
+
+    /**
+     * Writes one interval histogram per second to the log, and returns them
+     * all added together.
+     */
+    private Histogram record(int durationSeconds, File histogramLog) throws Exception {
+        Histogram total = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+
+        try (PrintStream log = new PrintStream(histogramLog, UTF_8.name())) {
+            HistogramLogWriter writer = new HistogramLogWriter(log);
+            long startMillis = System.currentTimeMillis();
+            writer.outputStartTime(startMillis);
+            writer.setBaseTime(startMillis);
+            writer.outputLegend();
+
+            Histogram interval = null;
+            for (int second = 0; second < durationSeconds; second++) {
+                TimeUnit.SECONDS.sleep(1);
+                interval = recorder.getIntervalHistogram(interval);
+                writer.outputIntervalHistogram(interval);
+                total.add(interval);
+            }
+        }
+
+        return total;
+    }
+
+    private void report(Histogram total, int durationSeconds, File histogramLog) {
+        System.out.printf("%nRequests:   %d (%d errors)%n", total.getTotalCount(), errors.get());
+        System.out.printf("Throughput: %.1f requests/s%n", (double) total.getTotalCount() / durationSeconds);
+        System.out.printf("Latency:    p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms%n",
+                millis(total.getValueAtPercentile(50)),
+                millis(total.getValueAtPercentile(99)),
+                millis(total.getValueAtPercentile(99.9)),
+                millis(total.getMaxValue()));
+        System.out.printf("Histograms: %s%n", histogramLog.getAbsolutePath());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static void writeStubs(File rootDir, int stubCount) throws IOException {
+        File mappings = new File(rootDir, "mappings");
+        File files = new File(rootDir, "__files");
+        if (!mappings.mkdirs() || !files.mkdirs()) {
+            throw new IOException("Couldn't create stub directories under " + rootDir);
+        }
+
+        Files.write(new File(files, "reply.xml").toPath(), Payloads.replyTemplate().getBytes(UTF_8));
+
+        for (int i = 0; i < stubCount; i++) {
+            String mapping = "{\n"
+                    + "  \"request\": {\n"
+                    + "    \"customMatcher\": {\n"
+                    + "      \"name\": \"wpgMatcher\",\n"
+                    + "      \"parameters\": {\n"
+                    + "        \"method\": \"POST\",\n"
+                    + "        \"url\": \"" + BenchmarkRequest.URL + "\",\n"
+                    + "        \"headers\": {\n"
+                    + "          \"Content-Type\": \"text/xml.*\"\n"
+                    + "        },\n"
+                    + "        \"xpath\": [\n"
+                    + "          \"/paymentService/submit/order[@orderCode='" + orderCode(i) + "']\"\n"
+                    + "        ]\n"
+                    + "      }\n"
+                    + "    }\n"
+                    + "  },\n"
+                    + "  \"response\": {\n"
+                    + "    \"status\": 200,\n"
+                    + "    \"bodyFileName\": \"reply.xml\",\n"
+                    + "    \"headers\": {\n"
+                    + "      \"Content-Type\": \"text/xml\"\n"
+                    + "    }\n"
+                    + "  }\n"
+                    + "}\n";
+            Files.write(new File(mappings, "order-" + i + ".json").toPath(), mapping.getBytes(UTF_8));
+        }
+    }
+
+    private static List<byte[]> requestBodies(int stubCount, String payloadSize) {
+        int distinct = Math.min(stubCount, MAXIMUM_DISTINCT_BODIES);
+        List<byte[]> bodies = new ArrayList<>(distinct);
+        for (int i = 0; i < distinct; i++) {
+            bodies.add(Payloads.orderRequest(orderCode((int) ((long) i * stubCount / distinct)), payloadSize));
+        }
+        return bodies;
+    }
+
+    private static String orderCode(int stub) {
+        return "ORDER-" + stub;
+    }
+
+    private int intOption(String name) {
+        return Integer.parseInt(options.get(name));
+    }
+
+    /**
+     * @return the options, including defaults, or null if help was asked for
+     * @throws IllegalArgumentException for an unknown or incomplete option
+     */
+    static Map<String, String> parseOptions(String... args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("stubs", "100");
+        options.put("clients", "16");
+        options.put("payload-size", "1KB");
+        options.put("warmup", "10");
+        options.put("duration", "30");
+        options.put("port", "0");
+        options.put("container-threads", "32");
+        options.put("histogram-log", "load-test.hlog");
+
+        for (int i = 0; i < args.length; i++) {
+            if ("--help".equals(args[i])) {
+                return null;
+            }
+
+            String name = args[i].startsWith("--") ? args[i].substring(2) : null;
+            if (name == null || !options.containsKey(name) || i + 1 == args.length) {
+                throw new IllegalArgumentException("Unknown or incomplete option: " + args[i]);
+            }
+            options.put(name, args[++i]);
+        }
+
+        return options;
+    }
+
+    private static void printUsage(PrintStream out) {
+        out.println("Options, with their defaults:");
+        for (Map.Entry<String, String> option : parseOptions().entrySet()) {
+            out.printf("  --%-18s %s%n", option.getKey(), option.getValue());
+        }
+        out.println("Times are in seconds. Payload sizes are e.g. 1KB, 100KB or 1MB.");
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
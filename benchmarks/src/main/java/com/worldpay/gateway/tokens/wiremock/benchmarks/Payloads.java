@@ -0,0 +1,138 @@
+package com.worldpay.gateway.tokens.wiremock.benchmarks;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Realistic WPG payment service documents for the benchmarks.
+ *
+ * <p>Each request is a tokenising card order. Larger sizes are reached by
+ * adding order lines, which is how real orders grow, so the shape of the
+ * document stays the same and only its length changes.
+ */
+final class Payloads {
+
+    /**
+     * The payload sizes every benchmark is run with. Names are understood by
+     * {@link #sizeInBytes(String)}.
+     */
+    static final String[] SIZES = {"1KB", "10KB", "100KB", "1MB"};
+
+    private Payloads() {
+    }
+
+    /**
+     * @param size a size such as {@code "10KB"} or {@code "1MB"}
+     * @return the size in bytes
+     */
+    static int sizeInBytes(String size) {
+        if (size.endsWith("MB")) {
+            return Integer.parseInt(size.substring(0, size.length() - 2)) * 1024 * 1024;
+        }
+        if (size.endsWith("KB")) {
+            return Integer.parseInt(size.substring(0, size.length() - 2)) * 1024;
+        }
+        return Integer.parseInt(size);
+    }
+
+    /**
+     * @param orderCode the order code
+     * @param size the smallest acceptable size, such as {@code "10KB"}
+     * @return an order request of at least that size
+     */
+    static byte[] orderRequest(String orderCode, String size) {
+        return orderRequest(orderCode, sizeInBytes(size)).getBytes(UTF_8);
+    }
+
+    /**
+     * @param orderCode the order code
+     * @param minimumLength the smallest acceptable length, in characters
+     * @return an order request of at least that length
+     */
+    static String orderRequest(String orderCode, int minimumLength) {
+        String head = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<!DOCTYPE paymentService PUBLIC \"-//WorldPay//DTD WorldPay PaymentService v1//EN\"\n"
+                + "        \"http://dtd.worldpay.com/paymentService_v1.dtd\">\n"
+                + "<paymentService version=\"1.4\" merchantCode=\"MERCHANT1\">\n"
+                + "  <submit>\n"
+                + "    <order orderCode=\"" + orderCode + "\" installationId=\"1234567\">\n"
+                + "      <description>Benchmark order</description>\n"
+                + "      <amount currencyCode=\"GBP\" exponent=\"2\" value=\"5000\"/>\n"
+                + "      <orderLines>\n";
+        String tail = "      </orderLines>\n"
+                + "      <paymentDetails>\n"
+                + "        <VISA-SSL>\n"
+                + "          <cardNumber>4444333322221111</cardNumber>\n"
+                + "          <expiryDate><date month=\"01\" year=\"2030\"/></expiryDate>\n"
+                + "          <cardHolderName>J. Shopper</cardHolderName>\n"
+                + "          <cvc>123</cvc>\n"
+                + "        </VISA-SSL>\n"
+                + "        <session shopperIPAddress=\"127.0.0.1\" id=\"0215ui8ib1\"/>\n"
+                + "      </paymentDetails>\n"
+                + "      <shopper>\n"
+                + "        <shopperEmailAddress>shopper@example.com</shopperEmailAddress>\n"
+                + "        <authenticatedShopperID>shopper-" + orderCode + "</authenticatedShopperID>\n"
+                + "      </shopper>\n"
+                + "      <createToken tokenScope=\"shopper\">\n"
+                + "        <tokenEventReference>ref-" + orderCode + "</tokenEventReference>\n"
+                + "        <tokenReason>Benchmark</tokenReason>\n"
+                + "      </createToken>\n"
+                + "    </order>\n"
+                + "  </submit>\n"
+                + "</paymentService>\n";
+
+        StringBuilder document = new StringBuilder(minimumLength + 1024).append(head);
+        for (int line = 1; document.length() + tail.length() < minimumLength; line++) {
+            document.append("        <lineItem>\n")
+                    .append("          <physical/>\n")
+                    .append("          <reference>SKU-").append(line).append("</reference>\n")
+                    .append("          <name>Item ").append(line).append("</name>\n")
+                    .append("          <quantity>1</quantity>\n")
+                    .append("          <quantityUnit>each</quantityUnit>\n")
+                    .append("          <unitPrice>100</unitPrice>\n")
+                    .append("          <taxRate>2000</taxRate>\n")
+                    .append("          <totalAmount>100</totalAmount>\n")
+                    .append("          <totalTaxAmount>17</totalTaxAmount>\n")
+                    .append("        </lineItem>\n");
+        }
+
+        return document.append(tail).toString();
+    }
+
+    /**
+     * @return a reply template which echoes parts of the request and issues a
+     *         token, using each of the simulator's helpers
+     */
+    static String replyTemplate() {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<!DOCTYPE paymentService PUBLIC \"-//WorldPay//DTD WorldPay PaymentService v1//EN\"\n"
+                + "        \"http://dtd.worldpay.com/paymentService_v1.dtd\">\n"
+                + "<paymentService version=\"1.4\" merchantCode=\"{{xpath request.xmlBody '/paymentService/@merchantCode'}}\">\n"
+                + "  <reply>\n"
+                + "    <orderStatus orderCode=\"{{xpath request.xmlBody '/paymentService/submit/order/@orderCode'}}\">\n"
+                + "      <payment>\n"
+                + "        <paymentMethod>VISA-SSL</paymentMethod>\n"
+                + "        <amount value=\"{{xpath request.xmlBody '/paymentService/submit/order/amount/@value'}}\" "
+                + "currencyCode=\"{{xpath request.xmlBody '/paymentService/submit/order/amount/@currencyCode'}}\" "
+                + "exponent=\"2\" debitCreditIndicator=\"credit\"/>\n"
+                + "        <lastEvent>AUTHORISED</lastEvent>\n"
+                + "      </payment>\n"
+                + "      <token>\n"
+                + "        <authenticatedShopperID>{{xpath request.xmlBody "
+                + "'/paymentService/submit/order/shopper/authenticatedShopperID'}}</authenticatedShopperID>\n"
+                + "        <tokenEventReference>{{xpath request.xmlBody "
+                + "'/paymentService/submit/order/createToken/tokenEventReference'}}</tokenEventReference>\n"
+                + "        <tokenReason>{{xpath request.xmlBody "
+                + "'/paymentService/submit/order/createToken/tokenReason'}}</tokenReason>\n"
+                + "        <tokenDetails tokenEvent=\"NEW\">\n"
+                + "          <paymentTokenID>{{randomDigits 16}}</paymentTokenID>\n"
+                + "          <paymentTokenExpiry>{{xmlDate 30}}</paymentTokenExpiry>\n"
+                + "          <tokenEventReference>{{xpath request.xmlBody "
+                + "'/paymentService/submit/order/createToken/tokenEventReference'}}</tokenEventReference>\n"
+                + "        </tokenDetails>\n"
+                + "      </token>\n"
+                + "      <date>{{xmlDate 0}}</date>\n"
+                + "    </orderStatus>\n"
+                + "  </reply>\n"
+                + "</paymentService>\n";
+    }
+}
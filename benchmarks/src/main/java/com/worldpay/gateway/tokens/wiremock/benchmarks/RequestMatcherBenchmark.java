@@ -0,0 +1,104 @@
+package com.worldpay.gateway.tokens.wiremock.benchmarks;
+
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.worldpay.gateway.tokens.wiremock.extension.WpgRequestMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matches one request against a whole stub set, as WireMock does for every
+ * request it serves.
+ *
+ * <p>The stub set mixes the kinds of stub the simulator is used with: most
+ * select an order by its order code, which can be answered by streaming; some
+ * select on card number text, which needs a DOM; and some are for a different
+ * url, which the stub index rules out. Exactly one stub, the last, matches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestMatcherBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int stubCount;
+
+    @Param({"1KB", "10KB", "100KB", "1MB"})
+    public String payloadSize;
+
+    private WpgRequestMatcher matcher;
+    private List<Parameters> stubs;
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws Exception {
+        matcher = new WpgRequestMatcher();
+
+        stubs = new ArrayList<>(stubCount);
+        for (int i = 0; i < stubCount; i++) {
+            stubs.add(i == stubCount - 1 ? orderCodeStub(i) : stub(i));
+        }
+
+        body = Payloads.orderRequest("ORDER-" + (stubCount - 1), payloadSize);
+    }
+
+    /**
+     * @return the number of matching stubs, which is always one
+     */
+    @Benchmark
+    public int matchStubSet() {
+        BenchmarkRequest request = new BenchmarkRequest(body);
+
+        int matches = 0;
+        for (Parameters stub : stubs) {
+            if (matcher.match(request, stub).isExactMatch()) {
+                matches++;
+            }
+        }
+
+        return matches;
+    }
+
+    private static Parameters stub(int i) {
+        switch (i % 4) {
+            case 2:
+                return Parameters.from(ImmutableMap.of(
+                        "method", "POST",
+                        "url", BenchmarkRequest.URL,
+                        "xpath", ImmutableList.of(
+                                "/paymentService/submit/order/paymentDetails/VISA-SSL/cardNumber[text()='4" + i + "']")));
+            case 3:
+                return Parameters.from(ImmutableMap.of(
+                        "method", "POST",
+                        "url", "/jsp/merchant/xml/inquiry" + i + ".jsp",
+                        "xpath", ImmutableList.of("/paymentService/inquiry")));
+            default:
+                return orderCodeStub(i);
+        }
+    }
+
+    private static Parameters orderCodeStub(int i) {
+        return Parameters.from(ImmutableMap.of(
+                "method", "POST",
+                "url", BenchmarkRequest.URL,
+                "headers", ImmutableMap.of("Content-Type", "text/xml.*"),
+                "xpath", ImmutableList.of("/paymentService/submit/order[@orderCode='ORDER-" + i + "']")));
+    }
+}
@@ -0,0 +1,85 @@
+package com.worldpay.gateway.tokens.wiremock.benchmarks;
+
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.common.SingleRootFileSource;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.worldpay.gateway.tokens.wiremock.extension.WpgResponseTemplateTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Renders a tokenising order reply for a request, from an inline body or a
+ * body file, through {@link WpgResponseTemplateTransformer}. The reply uses
+ * every helper and reads several values from the request body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseTransformerBenchmark {
+
+    @Param({"inline", "file"})
+    public String bodySource;
+
+    @Param({"1KB", "10KB", "100KB", "1MB"})
+    public String payloadSize;
+
+    private WpgResponseTemplateTransformer transformer;
+    private File filesRoot;
+    private FileSource fileSource;
+    private ResponseDefinition responseDefinition;
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws IOException {
+        transformer = new WpgResponseTemplateTransformer();
+        filesRoot = Files.createTempDirectory("transformer-benchmark").toFile();
+        fileSource = new SingleRootFileSource(filesRoot);
+        body = Payloads.orderRequest("ORDER-1", payloadSize);
+
+        if ("file".equals(bodySource)) {
+            Files.write(new File(filesRoot, "reply.xml").toPath(), Payloads.replyTemplate().getBytes(UTF_8));
+            responseDefinition = aResponse()
+                    .withHeader("Content-Type", "text/xml")
+                    .withBodyFile("reply.xml")
+                    .build();
+        } else {
+            responseDefinition = aResponse()
+                    .withHeader("Content-Type", "text/xml")
+                    .withBody(Payloads.replyTemplate())
+                    .build();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        new File(filesRoot, "reply.xml").delete();
+        filesRoot.delete();
+    }
+
+    @Benchmark
+    public ResponseDefinition transform() {
+        return transformer.transform(new BenchmarkRequest(body), responseDefinition, fileSource, Parameters.empty());
+    }
+}
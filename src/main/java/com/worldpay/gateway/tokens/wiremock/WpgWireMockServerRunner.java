@@ -1,18 +1,197 @@
 package com.worldpay.gateway.tokens.wiremock;
 
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.common.ConsoleNotifier;
+import com.github.tomakehurst.wiremock.common.FatalStartupException;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.common.Notifier;
+import com.github.tomakehurst.wiremock.core.MappingsSaver;
+import com.github.tomakehurst.wiremock.matching.RequestPattern;
 import com.github.tomakehurst.wiremock.standalone.CommandLineOptions;
+import com.github.tomakehurst.wiremock.standalone.MappingsLoader;
 import com.github.tomakehurst.wiremock.standalone.WireMockServerRunner;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+import com.worldpay.gateway.tokens.wiremock.extension.StubBundle;
+import com.worldpay.gateway.tokens.wiremock.extension.StubFileWatcher;
+import com.worldpay.gateway.tokens.wiremock.extension.StubWarmUp;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+
+import static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder.responseDefinition;
+import static com.github.tomakehurst.wiremock.client.WireMock.anyUrl;
+import static com.github.tomakehurst.wiremock.core.WireMockApp.FILES_ROOT;
+import static com.github.tomakehurst.wiremock.core.WireMockApp.MAPPINGS_ROOT;
+import static com.github.tomakehurst.wiremock.http.RequestMethod.ANY;
+import static com.github.tomakehurst.wiremock.matching.RequestPatternBuilder.newRequestPattern;
 
 public class WpgWireMockServerRunner {
 
     private static CommandLineOptions options = new CommandLineOptions();
 
     public static void main(String... args) {
-        options = new CommandLineOptions(args);
-        WireMockServerRunner.main(args);
+        start(args);
+    }
+
+    /**
+     * Starts a server in the same way as {@link #main(String...)}, returning
+     * it so that it can be stopped again, e.g. by a load test.
+     *
+     * <p>The stubs are loaded from the files root's {@link StubBundle} if it is
+     * up to date, and from the mapping files otherwise. Before the server starts
+     * listening, they are precompiled and warmed up (see {@link StubWarmUp}), and
+     * any invalid stubs are reported. Once it is listening, the stub files are
+     * watched for changes (see {@link StubFileWatcher}) until the server is stopped.
+     *
+     * @param args WireMock's standalone command line options
+     * @return the running server
+     */
+    public static WireMockServerRunner start(String... args) {
+        WpgOptions wpgOptions = new WpgOptions(args);
+        options = wpgOptions;
+
+        Runner runner = new Runner(wpgOptions);
+        runner.run(args);
+        return runner;
     }
 
     public static CommandLineOptions getOptions() {
         return options;
     }
+
+    /**
+     * WireMock's options, but loading the stubs from a bundle, so that the
+     * stub file watcher knows which stub came from which file, and saving them
+     * back into those files.
+     */
+    private static final class WpgOptions extends CommandLineOptions {
+        private StubBundle bundle;
+
+        private WpgOptions(String... args) {
+            super(args);
+        }
+
+        @Override
+        public MappingsLoader mappingsLoader() {
+            return bundle != null ? bundle.mappingsLoader(filesRoot()) : super.mappingsLoader();
+        }
+
+        @Override
+        public MappingsSaver mappingsSaver() {
+            return bundle != null ? bundle.mappingsSaver(filesRoot()) : super.mappingsSaver();
+        }
+    }
+
+    /**
+     * Runs WireMock as {@link WireMockServerRunner} does, apart from where the
+     * stubs are loaded from and what is done with them, and stops watching the
+     * stub files when the server is stopped. WireMock's own run can't be used,
+     * as it reads its options from the command line itself, so they can't load
+     * the stubs from a bundle; its output is kept the same, banner included.
+     */
+    private static final class Runner extends WireMockServerRunner {
+        private final WpgOptions options;
+        private WireMockServer server;
+        private StubFileWatcher watcher;
+
+        private Runner(WpgOptions options) {
+            this.options = options;
+        }
+
+        /**
+         * @param args ignored, as the options have already been read from them
+         */
+        @Override
+        public void run(String... args) {
+            if (options.help()) {
+                System.out.println(options.helpText());
+                return;
+            }
+
+            FileSource filesRoot = options.filesRoot();
+            filesRoot.createIfNecessary();
+            FileSource filesFileSource = filesRoot.child(FILES_ROOT);
+            filesFileSource.createIfNecessary();
+            FileSource mappingsFileSource = filesRoot.child(MAPPINGS_ROOT);
+            mappingsFileSource.createIfNecessary();
+
+            Notifier notifier = new ConsoleNotifier(options.verboseLoggingEnabled());
+            options.bundle = StubBundle.isEnabled()
+                    ? StubBundle.load(filesRoot, notifier)
+                    : StubBundle.loose(filesRoot);
+            StubWarmUp.run(filesRoot, options.bundle, notifier);
+
+            server = new WireMockServer(options);
+            if (options.recordMappingsEnabled()) {
+                server.enableRecordMappings(mappingsFileSource, filesFileSource);
+            }
+            if (options.specifiesProxyUrl()) {
+                addProxyMapping(options.proxyUrl());
+            }
+
+            try {
+                server.start();
+                System.out.println(banner());
+                System.out.println();
+                System.out.println(options);
+            } catch (FatalStartupException e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+
+            if (StubFileWatcher.isEnabled()) {
+                try {
+                    watcher = StubFileWatcher.start(filesRoot, server, notifier, options.bundle,
+                            options.recordMappingsEnabled());
+                } catch (IOException e) {
+                    notifier.error("Stub files won't be reloaded when they change", e);
+                }
+            }
+        }
+
+        private void addProxyMapping(String baseUrl) {
+            server.loadMappingsUsing(stubMappings -> {
+                RequestPattern requestPattern = newRequestPattern(ANY, anyUrl()).build();
+                StubMapping proxyMapping = new StubMapping(requestPattern,
+                        responseDefinition().proxiedFrom(baseUrl).build());
+                // low priority, so that existing stubs take precedence
+                proxyMapping.setPriority(10);
+                stubMappings.addMapping(proxyMapping);
+            });
+        }
+
+        /**
+         * @return the banner WireMock prints when it starts, or nothing if it
+         *         can't be found
+         */
+        private static String banner() {
+            try {
+                Field banner = WireMockServerRunner.class.getDeclaredField("BANNER");
+                banner.setAccessible(true);
+                return (String) banner.get(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return "";
+            }
+        }
+
+        @Override
+        public void stop() {
+            if (watcher != null) {
+                watcher.close();
+            }
+            if (server != null) {
+                server.stop();
+            }
+        }
+
+        @Override
+        public boolean isRunning() {
+            return server != null && server.isRunning();
+        }
+
+        @Override
+        public int port() {
+            return server.port();
+        }
+    }
 }
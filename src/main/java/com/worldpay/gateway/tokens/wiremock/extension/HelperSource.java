@@ -1,15 +1,17 @@
 package com.worldpay.gateway.tokens.wiremock.extension;
 
 import com.github.jknack.handlebars.Handlebars;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.XPathCache;
 import org.w3c.dom.Document;
 
-import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Random;
+import java.time.Clock;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 
 /**
@@ -17,15 +19,34 @@ import java.util.Random;
  */
 public class HelperSource {
 
-    private final XPathFactory xpathFactory;
+    /**
+     * Results of {@link #xpath(Document, String)}, per document and then per
+     * expression. Documents are held weakly, so their results go with them.
+     */
+    private static final Cache<Document, Map<String, String>> xpathResults = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    private final RandomDigits randomDigits;
+
+    private final XmlDates xmlDates;
 
     public HelperSource() {
-        this.xpathFactory = XPathFactory.newInstance();
+        this(RandomDigits.fromSystemProperties(), Clock.systemDefaultZone());
+    }
+
+    HelperSource(RandomDigits randomDigits, Clock clock) {
+        this.randomDigits = randomDigits;
+        this.xmlDates = new XmlDates(clock);
     }
 
     /**
      * Applies an XPath expression to the context, which must be a {@link Document}.
      *
+     * <p>Expressions are compiled once, through {@link XPathCache}, and each
+     * expression is only evaluated once per document, however many times a
+     * template uses it.
+     *
      * @param context a Document instance on which to perform the XPath expression
      * @param expression the XPath expression to perform
      * @return a String resulting from the XPath expression
@@ -33,8 +54,19 @@ public class HelperSource {
      */
     public String xpath(Document context, String expression) throws IOException {
         try {
-            return (String) xpathFactory.newXPath().evaluate(expression, context, XPathConstants.STRING);
-        } catch (XPathExpressionException e) {
+            if (context == null) {
+                return XPathCache.shared().compile(expression).evaluateString(null);
+            }
+
+            Map<String, String> results = xpathResults.get(context, ConcurrentHashMap::new);
+            String result = results.get(expression);
+            if (result == null) {
+                result = XPathCache.shared().compile(expression).evaluateString(context);
+                results.put(expression, result);
+            }
+
+            return result;
+        } catch (XPathExpressionException | ExecutionException e) {
             throw new IOException(e);
         }
     }
@@ -42,38 +74,34 @@ public class HelperSource {
     /**
      * Generates a string of {@code count} random digits.
      *
+     * <p>The digits are reproducible if a seed is given at startup; see
+     * {@link RandomDigits}.
+     *
      * @param count how many digits to generate
      * @return a String of {@code count} random digits
      */
     public String randomDigits(int count) {
-        StringBuilder sb = new StringBuilder(count);
-        Random random = new Random();
-
-        for (int i = 0; i < count; i++) {
-            sb.append(random.nextInt(10));
-        }
-
-        return sb.toString();
+        return randomDigits.next(count);
     }
 
-    private static final ThreadLocal<SimpleDateFormat> simpleDateFormat = new ThreadLocal<SimpleDateFormat>() {
-        @Override
-        protected SimpleDateFormat initialValue() {
-            return new SimpleDateFormat("'<date dayOfMonth=\"'dd'\" month=\"'MM'\" year=\"'yyyy'\" "
-                    + "hour=\"'HH'\" minute=\"'mm'\" second=\"'ss'\"/>'");
-        }
-    };
+    /**
+     * Starts the random digits again from their seed, if they have one.
+     */
+    void resetRandomDigits() {
+        randomDigits.reset();
+    }
 
     /**
      * Generates a date in WPG XML format, e.g.:
      * {@literal <date dayOfMonth="26" month="06" year="2017" hour="09" minute="56" second="38"/>}
      *
+     * <p>Dates are rendered at most once a second for each offset; see
+     * {@link XmlDates}.
+     *
      * @param daysFromNow number of days to add to the current date to generate a new date
      * @return a date in WPG XML format
      */
     public Handlebars.SafeString xmlDate(int daysFromNow) {
-        Calendar calendar = Calendar.getInstance();
-        calendar.add(Calendar.DAY_OF_YEAR, daysFromNow);
-        return new Handlebars.SafeString(simpleDateFormat.get().format(calendar.getTime()));
+        return xmlDates.daysFromNow(daysFromNow);
     }
 }
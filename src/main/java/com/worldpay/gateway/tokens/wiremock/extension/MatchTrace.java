@@ -0,0 +1,196 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A record of how {@link WpgRequestMatcher} matched a single request: every
+ * stub it evaluated, the stages each stub went through with their timings, and
+ * the stage which rejected it, along with the time spent reading the body.
+ *
+ * <p>Traces are started by {@link MatchTraces} and held by the request's
+ * {@link RequestContext}. They are serialised to JSON through their getters,
+ * and may be read while the request is still being matched.
+ */
+public final class MatchTrace {
+
+    private final String id;
+    private final String method;
+    private final String url;
+    private final long startedAt;
+
+    private Long parseNanos;
+    private int streamingPasses;
+    private long streamingNanos;
+
+    private final List<StubTrace> stubs = new ArrayList<>();
+
+    MatchTrace(String id, String method, String url) {
+        this.id = id;
+        this.method = method;
+        this.url = url;
+        this.startedAt = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return when matching started, in milliseconds since the epoch
+     */
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * @return the time taken to parse the body into a DOM, or null if it wasn't
+     */
+    public synchronized Long getParseNanos() {
+        return parseNanos;
+    }
+
+    /**
+     * @return the number of streaming passes made over the body to evaluate
+     *         XPath expressions
+     */
+    public synchronized int getStreamingPasses() {
+        return streamingPasses;
+    }
+
+    /**
+     * @return the total time taken by the streaming passes
+     */
+    public synchronized long getStreamingNanos() {
+        return streamingNanos;
+    }
+
+    /**
+     * @return the stubs evaluated so far, in the order they were evaluated
+     */
+    public synchronized List<StubTrace> getStubs() {
+        return ImmutableList.copyOf(stubs);
+    }
+
+    synchronized void recordParse(long nanos) {
+        parseNanos = nanos;
+    }
+
+    synchronized void recordStreamingPass(long nanos) {
+        streamingPasses++;
+        streamingNanos += nanos;
+    }
+
+    synchronized StubTrace startStub(String stub, boolean candidate) {
+        StubTrace trace = new StubTrace(stub, candidate);
+        stubs.add(trace);
+        return trace;
+    }
+
+    /**
+     * The evaluation of one stub against the request.
+     */
+    public static final class StubTrace {
+        private final String stub;
+        private final boolean candidate;
+        private final List<Stage> stages = new ArrayList<>();
+        private String rejectedBy;
+        private boolean matched;
+        private long nanos;
+
+        private StubTrace(String stub, boolean candidate) {
+            this.stub = stub;
+            this.candidate = candidate;
+        }
+
+        /**
+         * @return a description of the stub's wpgMatcher parameters
+         */
+        public String getStub() {
+            return stub;
+        }
+
+        /**
+         * @return false if the {@link StubIndex} ruled the stub out, so it
+         *         would have been rejected without running any stage
+         */
+        public boolean isCandidate() {
+            return candidate;
+        }
+
+        /**
+         * @return the stages run, in order, up to and including the first to fail
+         */
+        public synchronized List<Stage> getStages() {
+            return ImmutableList.copyOf(stages);
+        }
+
+        /**
+         * @return the name of the stage which failed, or null if none did
+         */
+        public synchronized String getRejectedBy() {
+            return rejectedBy;
+        }
+
+        public synchronized boolean isMatched() {
+            return matched;
+        }
+
+        /**
+         * @return the total time taken to evaluate the stub
+         */
+        public synchronized long getNanos() {
+            return nanos;
+        }
+
+        synchronized boolean recordStage(String name, long nanos, boolean passed) {
+            stages.add(new Stage(name, nanos, passed));
+            if (!passed && rejectedBy == null) {
+                rejectedBy = name;
+            }
+            return passed;
+        }
+
+        synchronized void finish(boolean matched, long nanos) {
+            this.matched = matched;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * One check made against a stub's parameter.
+     */
+    public static final class Stage {
+        private final String name;
+        private final long nanos;
+        private final boolean passed;
+
+        private Stage(String name, long nanos, boolean passed) {
+            this.name = name;
+            this.nanos = nanos;
+            this.passed = passed;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public boolean isPassed() {
+            return passed;
+        }
+    }
+}
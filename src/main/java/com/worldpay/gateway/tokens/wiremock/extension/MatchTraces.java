@@ -0,0 +1,137 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.http.Request;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Decides which requests have their matching traced, and keeps the most
+ * recent {@link MatchTrace}s.
+ *
+ * <p>A request is traced if it has an {@value #TRACE_HEADER} header, or if
+ * tracing has been turned on for every request. The header's value is used as
+ * the trace id, unless it is empty or {@code true}, in which case an id is
+ * generated. Either way the id is returned in an {@value #TRACE_ID_HEADER}
+ * response header, when there is a response to return it in.
+ *
+ * <p>Untraced requests cost one header lookup, when the context is created.
+ */
+public final class MatchTraces {
+
+    public static final String TRACE_HEADER = "X-WPG-Trace";
+    public static final String TRACE_ID_HEADER = "X-WPG-Trace-Id";
+
+    static final int MAXIMUM_SIZE = 100;
+
+    private static final MatchTraces shared = new MatchTraces(MAXIMUM_SIZE);
+
+    private volatile boolean enabled;
+
+    private final Map<String, MatchTrace> traces;
+
+    MatchTraces(final int maximumSize) {
+        traces = new LinkedHashMap<String, MatchTrace>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MatchTrace> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * @return the traces shared by every matcher and transformer in this process
+     */
+    public static MatchTraces shared() {
+        return shared;
+    }
+
+    /**
+     * @return true if every request is traced, whether or not it asks to be
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enabled whether to trace every request
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts a trace for a request, if it is to be traced.
+     *
+     * @param request the request about to be matched
+     * @return the new trace, or null if the request isn't traced
+     */
+    MatchTrace start(Request request) {
+        String requested = request.containsHeader(TRACE_HEADER) ? request.getHeader(TRACE_HEADER) : null;
+        if (requested == null && !enabled) {
+            return null;
+        }
+
+        String id = StringUtils.isBlank(requested) || "true".equalsIgnoreCase(requested)
+                ? UUID.randomUUID().toString()
+                : requested.trim();
+        String method = request.getMethod() != null ? request.getMethod().getName() : null;
+        MatchTrace trace = new MatchTrace(id, method, request.getUrl());
+        synchronized (traces) {
+            traces.remove(id);
+            traces.put(id, trace);
+        }
+
+        return trace;
+    }
+
+    /**
+     * Gets the trace of a request which has been matched, without starting one.
+     *
+     * @param request the request
+     * @return its trace, or null if it isn't traced
+     */
+    MatchTrace of(Request request) {
+        if (!enabled && !request.containsHeader(TRACE_HEADER)) {
+            return null;
+        }
+
+        return RequestContext.of(request).getTrace();
+    }
+
+    /**
+     * @param id the trace id
+     * @return the trace, or null if there isn't one with that id or it has
+     *         since been discarded
+     */
+    public MatchTrace get(String id) {
+        synchronized (traces) {
+            return traces.get(id);
+        }
+    }
+
+    /**
+     * @return the traces kept, most recent first
+     */
+    public List<MatchTrace> recent() {
+        synchronized (traces) {
+            return Lists.reverse(ImmutableList.copyOf(traces.values()));
+        }
+    }
+
+    /**
+     * Discards every trace kept.
+     */
+    public void clear() {
+        synchronized (traces) {
+            traces.clear();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates strings of random decimal digits, eighteen digits per random draw.
+ *
+ * <p>By default digits are drawn from {@link ThreadLocalRandom}, so threads
+ * never contend and nothing is allocated per call beyond the result. Setting
+ * the system property {@value #SEED_PROPERTY} at startup switches to a seeded
+ * generator instead, so that a run making the same calls in the same order
+ * produces the same digits, and a failure can be replayed. A seeded generator
+ * can be {@link #reset()} to the start of its sequence, so that digits drawn
+ * while the server warms up don't shift the ones requests see.
+ */
+final class RandomDigits {
+
+    static final String SEED_PROPERTY = "wpg.randomDigits.seed";
+
+    static final int DIGITS_PER_DRAW = 18;
+
+    private static final long DRAW_BOUND = 1_000_000_000_000_000_000L;
+
+    /**
+     * The largest multiple of {@link #DRAW_BOUND} which fits in 63 bits, so a
+     * seeded draw below it can be reduced without bias.
+     */
+    private static final long SEEDED_LIMIT = (Long.MAX_VALUE / DRAW_BOUND) * DRAW_BOUND;
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final long seed;
+
+    private final AtomicLong seededState;
+
+    private RandomDigits(long seed, AtomicLong seededState) {
+        this.seed = seed;
+        this.seededState = seededState;
+    }
+
+    /**
+     * @return a generator drawing from {@link ThreadLocalRandom}
+     */
+    static RandomDigits unseeded() {
+        return new RandomDigits(0, null);
+    }
+
+    /**
+     * @param seed the seed
+     * @return a generator which produces the same digits for the same seed
+     */
+    static RandomDigits seeded(long seed) {
+        return new RandomDigits(seed, new AtomicLong(seed));
+    }
+
+    /**
+     * @return a seeded generator if {@value #SEED_PROPERTY} is set, otherwise
+     *         an unseeded one
+     * @throws NumberFormatException if the property isn't a valid long
+     */
+    static RandomDigits fromSystemProperties() {
+        String seed = System.getProperty(SEED_PROPERTY);
+        return seed != null ? seeded(Long.parseLong(seed.trim())) : unseeded();
+    }
+
+    /**
+     * @return true if this generator was created with a seed
+     */
+    boolean isSeeded() {
+        return seededState != null;
+    }
+
+    /**
+     * Starts a seeded generator's sequence again from its seed. Does nothing
+     * to an unseeded one.
+     */
+    void reset() {
+        if (seededState != null) {
+            seededState.set(seed);
+        }
+    }
+
+    /**
+     * @param count how many digits to generate
+     * @return a String of {@code count} random digits
+     */
+    String next(int count) {
+        char[] digits = new char[Math.max(count, 0)];
+
+        int filled = 0;
+        while (filled < digits.length) {
+            long draw = draw();
+            int end = Math.min(filled + DIGITS_PER_DRAW, digits.length);
+            for (int i = filled; i < end; i++) {
+                digits[i] = (char) ('0' + (draw % 10));
+                draw /= 10;
+            }
+            filled = end;
+        }
+
+        return new String(digits);
+    }
+
+    /**
+     * @return a uniformly distributed value in [0, 10^18)
+     */
+    private long draw() {
+        if (seededState == null) {
+            return ThreadLocalRandom.current().nextLong(DRAW_BOUND);
+        }
+
+        long bits;
+        do {
+            bits = mix(seededState.addAndGet(GOLDEN_GAMMA)) >>> 1;
+        } while (bits >= SEEDED_LIMIT);
+
+        return bits % DRAW_BOUND;
+    }
+
+    /**
+     * The SplitMix64 finaliser, which turns successive states into
+     * well-distributed outputs.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
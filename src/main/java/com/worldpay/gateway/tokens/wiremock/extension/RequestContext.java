@@ -0,0 +1,271 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.http.ContentTypeHeader;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.Counter;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.LatencyHistogram;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.Metrics;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.SimpleXPath;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.StreamingXPathEvaluator;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.StructuralFingerprint;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.XmlParsers;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * State derived from a single {@link Request} which is shared between
+ * {@link WpgRequestMatcher} and {@link WpgResponseTemplateTransformer}.
+ *
+ * <p>WireMock hands the same {@link Request} instance to the custom matcher of
+ * every stub and then to the transformers, so the request body only needs to be
+ * parsed as XML once. The body is parsed straight from its bytes, using the
+ * charset from the Content-Type header if there is one and otherwise leaving the
+ * parser to detect the encoding from the XML declaration.
+ *
+ * <p>Contexts are held against the request by identity using weak keys, so
+ * they are released as soon as WireMock has finished with the request. For the
+ * same reason a context must never hold a reference back to its request, which
+ * would keep the entry alive for as long as the cache.
+ *
+ * <p>The parsed {@link Document} is shared by every caller and must be treated
+ * as read-only. Simple XPath expressions are answered by streaming over the body
+ * instead, so for most requests no DOM is built at all.
+ *
+ * <p>Parses and streaming passes are counted and timed in the shared
+ * {@link Metrics}, and in the request's {@link MatchTrace} if it is traced.
+ */
+public final class RequestContext {
+
+    private static final Cache<Request, RequestContext> contexts = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    private static final Counter parses = Metrics.shared()
+            .counter("wpg_xml_parses_total", "Request bodies parsed into a DOM.");
+    private static final Counter parsedBytes = Metrics.shared()
+            .counter("wpg_xml_parse_bytes_total", "Bytes of request body parsed into a DOM.");
+    private static final LatencyHistogram parseTime = Metrics.shared()
+            .histogram("wpg_xml_parse_duration_seconds", "Time taken to parse a request body into a DOM.");
+    private static final LatencyHistogram streamingTime = Metrics.shared()
+            .histogram("wpg_xpath_evaluation_duration_seconds", "Time taken to evaluate XPath expressions.",
+                    "mode", "streaming");
+
+    private final byte[] body;
+    private final String encoding;
+    private final MatchTrace trace;
+
+    private boolean parsed;
+    private Document xmlBody;
+    private Exception parseFailure;
+
+    private Long xmlBodyFingerprint;
+
+    private final Map<String, Boolean> streamedXPaths = new HashMap<>();
+    private boolean streamingFailed;
+
+    private boolean rootElementNameRead;
+    private String rootElementName;
+
+    private StubIndex.Route route;
+
+    private RequestContext(byte[] body, String encoding, MatchTrace trace) {
+        this.body = body;
+        this.encoding = encoding;
+        this.trace = trace;
+    }
+
+    /**
+     * Gets the context for a request, creating it on first use.
+     *
+     * @param request the request being served
+     * @return the context shared by everything handling this request
+     */
+    public static RequestContext of(final Request request) {
+        try {
+            return contexts.get(request, () -> new RequestContext(
+                    request.getBody(), encodingOf(request), MatchTraces.shared().start(request)));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Gets the request body parsed as XML. The body is parsed on the first call
+     * only; the resulting document, or the failure to parse it, is remembered
+     * for every later call.
+     *
+     * @return the parsed body, or null if the request has no body
+     * @throws SAXException if the body is not well-formed XML
+     * @throws IOException if the body could not be read
+     */
+    public synchronized Document getXmlBody() throws SAXException, IOException {
+        if (!parsed) {
+            long start = System.nanoTime();
+            try {
+                xmlBody = parseAsXml(body, encoding);
+            } catch (SAXException | IOException e) {
+                parseFailure = e;
+            }
+            parsed = true;
+
+            if (trace != null && body != null) {
+                trace.recordParse(System.nanoTime() - start);
+            }
+        }
+
+        if (parseFailure instanceof SAXException) {
+            throw (SAXException) parseFailure;
+        } else if (parseFailure instanceof IOException) {
+            throw (IOException) parseFailure;
+        }
+
+        return xmlBody;
+    }
+
+    /**
+     * Gets the {@link StructuralFingerprint} of the request body, computing it on
+     * the first call only.
+     *
+     * @return the fingerprint of the parsed body
+     * @throws IllegalStateException if the body couldn't be parsed, or there is no body
+     */
+    public synchronized long getXmlBodyFingerprint() {
+        if (xmlBodyFingerprint == null) {
+            if (!parsed || xmlBody == null) {
+                throw new IllegalStateException("Request body has not been parsed as XML");
+            }
+            xmlBodyFingerprint = StructuralFingerprint.of(xmlBody);
+        }
+
+        return xmlBodyFingerprint;
+    }
+
+    /**
+     * Evaluates expressions against the body with a {@link StreamingXPathEvaluator}.
+     * The result for each expression is remembered, so an expression shared by
+     * several stubs is only evaluated once per request.
+     *
+     * @param xpaths the expressions to evaluate
+     * @return whether each expression selects anything, in the same order as
+     *         {@code xpaths}, or null if they have to be evaluated against
+     *         {@link #getXmlBody()} instead
+     */
+    public synchronized boolean[] evaluateStreaming(List<SimpleXPath> xpaths) {
+        if (body == null || streamingFailed) {
+            return null;
+        }
+
+        List<SimpleXPath> unknown = new ArrayList<>();
+        for (SimpleXPath xpath : xpaths) {
+            if (!streamedXPaths.containsKey(xpath.getExpression())) {
+                unknown.add(xpath);
+            }
+        }
+
+        if (!unknown.isEmpty()) {
+            long start = System.nanoTime();
+            boolean[] streamed = StreamingXPathEvaluator.evaluate(body, encoding, unknown);
+            long elapsed = System.nanoTime() - start;
+            streamingTime.record(elapsed);
+            if (trace != null) {
+                trace.recordStreamingPass(elapsed);
+            }
+            if (streamed == null) {
+                streamingFailed = true;
+                return null;
+            }
+
+            for (int i = 0; i < streamed.length; i++) {
+                streamedXPaths.put(unknown.get(i).getExpression(), streamed[i]);
+            }
+        }
+
+        boolean[] results = new boolean[xpaths.size()];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = streamedXPaths.get(xpaths.get(i).getExpression());
+        }
+
+        return results;
+    }
+
+    /**
+     * Gets the name of the body's document element, reading no further into the
+     * body than necessary unless it has already been parsed.
+     *
+     * @return the element name, or null if the body doesn't start as XML
+     */
+    public synchronized String getRootElementName() {
+        if (!rootElementNameRead) {
+            if (parsed && xmlBody != null) {
+                rootElementName = xmlBody.getDocumentElement().getNodeName();
+            } else if (body != null) {
+                rootElementName = StreamingXPathEvaluator.rootElementName(body, encoding);
+            }
+            rootElementNameRead = true;
+        }
+
+        return rootElementName;
+    }
+
+    /**
+     * @return the trace of this request's matching, or null if it isn't traced
+     *         (see {@link MatchTraces})
+     */
+    public MatchTrace getTrace() {
+        return trace;
+    }
+
+    synchronized StubIndex.Route getRoute() {
+        return route;
+    }
+
+    synchronized void setRoute(StubIndex.Route route) {
+        this.route = route;
+    }
+
+    private static Document parseAsXml(byte[] bytes, String encoding) throws IOException, SAXException {
+        if (bytes != null) {
+            InputSource source = new InputSource(new ByteArrayInputStream(bytes));
+            source.setEncoding(encoding);
+
+            parses.increment();
+            parsedBytes.add(bytes.length);
+            long start = System.nanoTime();
+            try {
+                return XmlParsers.parse(source);
+            } finally {
+                parseTime.recordSince(start);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the charset named by the request's Content-Type header, or null
+     *         if there isn't one or it isn't supported by this JVM
+     */
+    private static String encodingOf(Request request) {
+        ContentTypeHeader contentType = request.contentTypeHeader();
+        String charset = contentType != null && contentType.isPresent() ? contentType.encodingPart().orNull() : null;
+
+        try {
+            return charset != null && Charset.isSupported(charset) ? charset : null;
+        } catch (IllegalCharsetNameException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.common.BinaryFile;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.http.HttpHeader;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.worldpay.gateway.tokens.wiremock.extension.TemplateCache.FileKey;
+
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Recognises responses which contain no Handlebars markup, so they can be
+ * served without templating.
+ *
+ * <p>A response is static if none of its body, headers and proxy base URL
+ * contain {@code "{{"}. Its inline parts are checked the first time the
+ * stub is served and the answer is held against its {@link ResponseDefinition}
+ * by identity, using weak keys, so it is dropped along with the stub. A static
+ * body file is read once and its bytes served from memory until the file
+ * changes; a body file containing markup is left to {@link TemplateCache}.
+ * Body files can also be dropped explicitly, by {@link #invalidate(URI)}.
+ */
+class StaticResponses {
+
+    private static final String TEMPLATE_MARKER = "{{";
+
+    private final Cache<ResponseDefinition, Boolean> inlineParts = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    private final Cache<ResponseDefinition, BodyFile> bodyFiles = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    /**
+     * Gets the form in which a response can be served without templating.
+     *
+     * @param responseDefinition the stub's response
+     * @param files the source of body files
+     * @return the response itself if it is static and has no body file, a copy
+     *         with the body file's contents inlined if it is static apart from
+     *         that file, or null if it has to be templated
+     */
+    ResponseDefinition staticFormOf(ResponseDefinition responseDefinition, FileSource files) {
+        if (!inlinePartsAreStatic(responseDefinition)) {
+            return null;
+        }
+
+        if (!responseDefinition.specifiesBodyFile()) {
+            return responseDefinition;
+        }
+
+        BinaryFile file = files.getBinaryFileNamed(responseDefinition.getBodyFileName());
+        FileKey key = FileKey.of(file);
+
+        BodyFile bodyFile = bodyFiles.getIfPresent(responseDefinition);
+        if (bodyFile == null || !bodyFile.key.equals(key)) {
+            bodyFile = new BodyFile(key, inlineBodyFile(responseDefinition, file.readContents()));
+            bodyFiles.put(responseDefinition, bodyFile);
+        }
+
+        return bodyFile.response;
+    }
+
+    /**
+     * Drops the contents held for a body file, for example when
+     * {@link StubFileWatcher} sees it change.
+     *
+     * @param uri the file's URI
+     */
+    void invalidate(URI uri) {
+        bodyFiles.asMap().values().removeIf(bodyFile -> bodyFile.key.isFor(uri));
+    }
+
+    private boolean inlinePartsAreStatic(ResponseDefinition responseDefinition) {
+        try {
+            return inlineParts.get(responseDefinition, () -> !hasInlineMarkup(responseDefinition));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static boolean hasInlineMarkup(ResponseDefinition responseDefinition) {
+        if (responseDefinition.specifiesBodyContent() && containsMarker(responseDefinition.getBody())) {
+            return true;
+        }
+
+        if (responseDefinition.getHeaders() != null) {
+            for (HttpHeader header : responseDefinition.getHeaders().all()) {
+                for (String value : header.values()) {
+                    if (containsMarker(value)) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return containsMarker(responseDefinition.getProxyBaseUrl());
+    }
+
+    private static boolean containsMarker(String content) {
+        // a binary body has no string form, and is never templated
+        return content != null && content.contains(TEMPLATE_MARKER);
+    }
+
+    private static ResponseDefinition inlineBodyFile(ResponseDefinition responseDefinition, byte[] contents) {
+        for (int i = 0; i < contents.length - 1; i++) {
+            if (contents[i] == '{' && contents[i + 1] == '{') {
+                return null;
+            }
+        }
+
+        return ResponseDefinitionBuilder.like(responseDefinition)
+                .withBodyFile(null)
+                .withBody(contents)
+                .build();
+    }
+
+    /**
+     * A version of a body file, and the response to serve for it, or null if
+     * the file contains markup.
+     */
+    private static final class BodyFile {
+        private final FileKey key;
+        private final ResponseDefinition response;
+
+        private BodyFile(FileKey key, ResponseDefinition response) {
+            this.key = key;
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,699 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.common.BinaryFile;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.common.IdGenerator;
+import com.github.tomakehurst.wiremock.common.Json;
+import com.github.tomakehurst.wiremock.common.Notifier;
+import com.github.tomakehurst.wiremock.common.SingleRootFileSource;
+import com.github.tomakehurst.wiremock.common.TextFile;
+import com.github.tomakehurst.wiremock.common.VeryShortIdGenerator;
+import com.github.tomakehurst.wiremock.core.MappingsSaver;
+import com.github.tomakehurst.wiremock.matching.CustomMatcherDefinition;
+import com.github.tomakehurst.wiremock.standalone.MappingsLoader;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.github.tomakehurst.wiremock.core.WireMockApp.FILES_ROOT;
+import static com.github.tomakehurst.wiremock.core.WireMockApp.MAPPINGS_ROOT;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The stubs under a files root compiled into a single file, which saves
+ * opening thousands of loose mapping and body files when a server starts.
+ *
+ * <p>A bundle holds the source of every mapping, the contents of every body
+ * file and {@code xmlLikeFile} document they refer to, and the size and
+ * modification time of each of those files and of every directory under
+ * {@code mappings}. It is read by memory-mapping it, so loading it costs one
+ * file open however many stubs it holds, and it is only used if none of the
+ * files it records has changed (see {@link #isFresh(FileSource)}); adding or
+ * removing a mapping changes the time of its directory. Otherwise the loose
+ * files are read instead and the bundle is written again.
+ *
+ * <p>The mappings are still stored as JSON and parsed by WireMock's Jackson on
+ * every start, as {@link StubMapping} has no other serialized form, and the
+ * parsing is most of the cost of loading a bundle. With 5,000 generated
+ * mappings on a warm page cache, reading and checking a bundle took 0.4s and
+ * parsing it 1.3s, against 1.9s for WireMock's own loader, and at 500 mappings
+ * the two were the same; the saving grows with the number of files, and with
+ * how slow they are to open.
+ *
+ * <p>Each mapping is parsed once, and the same {@link StubMapping}s are loaded
+ * into WireMock and precompiled by {@link StubWarmUp}, so the plans it compiles
+ * are the ones WireMock's stubs use. Templates and reference documents are
+ * compiled from the bundle's copies of their files, into caches keyed by the
+ * files themselves, so they are ready for the first request. The bundle also
+ * keeps track of the stub WireMock is serving for each mapping file, for
+ * {@link StubFileWatcher} to replace when the file changes.
+ *
+ * <p>As parsing dominates, bundles are off by default, and the mappings are
+ * read into a bundle which isn't written (see {@link #loose(FileSource)}).
+ * They are turned on with the system property
+ * {@value #ENABLED_PROPERTY}{@code =true}, where the files are slow to open,
+ * and then a bundle can be written when a container image is built, with
+ * {@link #main(String...)}, or is written by the first server to start without
+ * one, if the files root is writable. Either way, a mapping which can't be
+ * parsed stops the server starting, as it does in WireMock.
+ *
+ * <p>The file is made up of a header, the int {@link #MAGIC} and
+ * {@link #VERSION}, followed by three sections, each an int count and then its
+ * entries:
+ * <ul>
+ *     <li>the files recorded: name, size (-1 for a directory) and modification time;</li>
+ *     <li>the mappings: name and length-prefixed JSON source;</li>
+ *     <li>the files under {@code __files}: name and length-prefixed contents.</li>
+ * </ul>
+ * Names are written by {@link DataOutputStream#writeUTF(String)} and are relative
+ * to the files root, apart from those of files under {@code __files}, which are
+ * relative to that directory.
+ */
+public final class StubBundle {
+
+    public static final String FILE_NAME = "stubs.bundle";
+
+    public static final String ENABLED_PROPERTY = "wpg.bundle";
+
+    static final int MAGIC = 0x57504742;
+    static final int VERSION = 1;
+
+    private static final String WPG_MATCHER = "wpgMatcher";
+
+    private final List<Source> sources;
+    private final SortedMap<String, ByteBuffer> mappings;
+    private final Map<String, ByteBuffer> files;
+
+    // the stub WireMock is serving for each mapping file
+    private final ConcurrentMap<String, StubMapping> served = new ConcurrentHashMap<>();
+
+    private Map<String, StubMapping> parsed;
+
+    private StubBundle(List<Source> sources, SortedMap<String, ByteBuffer> mappings, Map<String, ByteBuffer> files) {
+        this.sources = sources;
+        this.mappings = mappings;
+        this.files = files;
+    }
+
+    /**
+     * Compiles the files under a files root into a bundle, and writes it to
+     * {@value #FILE_NAME} under the files root.
+     *
+     * @param args the files root, which is the current directory if not given
+     * @throws IOException if the files can't be read or the bundle can't be written
+     */
+    public static void main(String... args) throws IOException {
+        FileSource root = new SingleRootFileSource(args.length > 0 ? args[0] : ".");
+        StubBundle bundle = compile(root);
+        bundle.write(pathIn(root));
+
+        System.out.println(String.format("Compiled %d mappings and %d files into %s",
+                bundle.mappings.size(), bundle.files.size(), pathIn(root)));
+    }
+
+    /**
+     * @return true if {@value #ENABLED_PROPERTY} is set to {@code true}
+     */
+    public static boolean isEnabled() {
+        return "true".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY, "false").trim());
+    }
+
+    /**
+     * Loads the stubs under a files root from its bundle if it is up to date,
+     * or else from the loose files, in which case the bundle is written again.
+     *
+     * @param root the files root
+     * @param notifier where to report which was used, and any problems
+     * @return the bundle
+     */
+    public static StubBundle load(FileSource root, Notifier notifier) {
+        Path path = pathIn(root);
+        if (Files.exists(path)) {
+            try {
+                StubBundle bundle = read(path);
+                if (bundle.isFresh(root)) {
+                    notifier.info(String.format("Loading %d mappings from %s", bundle.mappings.size(), path));
+                    return bundle;
+                }
+
+                notifier.info(path + " is out of date, so the stub files will be read instead");
+            } catch (IOException e) {
+                notifier.error(path + " can't be read, so the stub files will be read instead: " + e.getMessage());
+            }
+        }
+
+        StubBundle bundle = compile(root);
+        try {
+            bundle.write(path);
+            notifier.info(String.format("Compiled %d mappings into %s", bundle.mappings.size(), path));
+        } catch (IOException e) {
+            notifier.error(path + " can't be written: " + e.getMessage());
+        }
+
+        return bundle;
+    }
+
+    /**
+     * Reads the mappings under a files root into a bundle which isn't written,
+     * leaving the files they refer to to be read from the directory, for when
+     * bundles are turned off.
+     *
+     * @param root the files root
+     * @return the bundle
+     */
+    public static StubBundle loose(FileSource root) {
+        return compile(root, false);
+    }
+
+    /**
+     * Reads the mappings under a files root, and the files they refer to.
+     * Files which can't be read are left out, and the stubs which refer to
+     * them are reported when they are precompiled.
+     *
+     * @param root the files root
+     * @return the bundle, which hasn't been written
+     */
+    static StubBundle compile(FileSource root) {
+        return compile(root, true);
+    }
+
+    private static StubBundle compile(FileSource root, boolean withFiles) {
+        Path rootPath = Paths.get(root.getPath());
+        List<Source> sources = new ArrayList<>();
+        SortedMap<String, ByteBuffer> mappings = new TreeMap<>();
+        Map<String, ByteBuffer> files = new LinkedHashMap<>();
+
+        for (Path path : walk(rootPath.resolve(MAPPINGS_ROOT))) {
+            Source source = Source.of(rootPath, path);
+            if (source == null) {
+                continue;
+            }
+
+            if (source.size < 0) {
+                sources.add(source);
+            } else if (source.name.endsWith(".json")) {
+                byte[] contents = readIfPresent(path);
+                if (contents != null) {
+                    sources.add(source);
+                    mappings.put(source.name, ByteBuffer.wrap(contents));
+                }
+            }
+        }
+
+        StubBundle bundle = new StubBundle(sources, mappings, files);
+        if (!withFiles) {
+            return bundle;
+        }
+
+        Path filesPath = rootPath.resolve(FILES_ROOT);
+        for (StubMapping mapping : bundle.getMappings().values()) {
+            for (String name : filesReferencedBy(mapping)) {
+                Path path = filesPath.resolve(name);
+                Source source = Source.of(rootPath, path);
+                byte[] contents = source != null && !files.containsKey(name) ? readIfPresent(path) : null;
+                if (contents != null) {
+                    sources.add(source);
+                    files.put(name, ByteBuffer.wrap(contents));
+                }
+            }
+        }
+
+        return bundle;
+    }
+
+    /**
+     * Memory-maps a bundle file.
+     *
+     * @param path the bundle file
+     * @return the bundle, whose contents are read from the file as they're used
+     * @throws IOException if the file can't be read or isn't a bundle of this version
+     */
+    static StubBundle read(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("not a stub bundle of version " + VERSION);
+            }
+
+            List<Source> sources = new ArrayList<>();
+            for (int i = buffer.getInt(); i > 0; i--) {
+                sources.add(new Source(readName(buffer), buffer.getLong(), buffer.getLong()));
+            }
+
+            SortedMap<String, ByteBuffer> mappings = new TreeMap<>();
+            for (int i = buffer.getInt(); i > 0; i--) {
+                mappings.put(readName(buffer), readContents(buffer));
+            }
+
+            Map<String, ByteBuffer> files = new LinkedHashMap<>();
+            for (int i = buffer.getInt(); i > 0; i--) {
+                files.put(readName(buffer), readContents(buffer));
+            }
+
+            return new StubBundle(sources, mappings, files);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("truncated stub bundle", e);
+        }
+    }
+
+    /**
+     * Writes the bundle to a new file, which then replaces any existing one.
+     *
+     * @param path the bundle file
+     * @throws IOException if the file can't be written
+     */
+    void write(Path path) throws IOException {
+        Path temporary = Files.createTempFile(path.toAbsolutePath().getParent(), FILE_NAME, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+
+                out.writeInt(sources.size());
+                for (Source source : sources) {
+                    out.writeUTF(source.name);
+                    out.writeLong(source.size);
+                    out.writeLong(source.lastModified);
+                }
+
+                writeEntries(out, mappings);
+                writeEntries(out, files);
+            }
+
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Checks that none of the files the bundle was compiled from has changed
+     * size or modification time, or been removed, and that no mapping has been
+     * added or removed. This only reads each file's attributes.
+     *
+     * @param root the files root
+     * @return true if the bundle can be used in place of the files
+     */
+    public boolean isFresh(FileSource root) {
+        Path rootPath = Paths.get(root.getPath());
+        if (sources.isEmpty() && Files.isDirectory(rootPath.resolve(MAPPINGS_ROOT))) {
+            return false;
+        }
+
+        for (Source source : sources) {
+            if (!source.equals(Source.of(rootPath, rootPath.resolve(source.name)))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses the bundle's mappings, the first time this is called. A mapping
+     * which can't be parsed fails the whole load, as it does in WireMock.
+     *
+     * @return the stubs, keyed by name (e.g. {@code mappings/example.json}), in name order
+     * @throws IllegalStateException if a mapping can't be parsed
+     */
+    public synchronized Map<String, StubMapping> getMappings() {
+        if (parsed == null) {
+            Map<String, StubMapping> stubs = new LinkedHashMap<>();
+            for (Map.Entry<String, ByteBuffer> mapping : mappings.entrySet()) {
+                try {
+                    StubMapping stub = StubMapping.buildFrom(UTF_8.decode(mapping.getValue().duplicate()).toString());
+                    stub.setDirty(false);
+                    stubs.put(mapping.getKey(), stub);
+                } catch (Exception e) {
+                    // WireMock rethrows Jackson's checked exceptions unchanged
+                    throw new IllegalStateException(
+                            mapping.getKey() + ": mapping can't be read: " + e.getMessage(), e);
+                }
+            }
+
+            parsed = Collections.unmodifiableMap(stubs);
+        }
+
+        return parsed;
+    }
+
+    /**
+     * Serves the files the bundle holds from memory, and any others from a
+     * directory. Files served from the bundle have the same URIs as those in
+     * the directory, so anything compiled from them is cached against the files
+     * WireMock serves.
+     *
+     * @param filesRoot the {@code __files} directory
+     * @return a source of the files under it
+     */
+    public FileSource files(FileSource filesRoot) {
+        return new BundledFileSource(filesRoot);
+    }
+
+    /**
+     * Loads the bundle's stubs into WireMock the first time it loads its
+     * default mappings. After that, for example when WireMock is reset to
+     * them, they're read from the mapping files, which may have been changed.
+     * Either way, the stubs loaded become the ones {@link #served()} for
+     * their files.
+     *
+     * @param root the files root
+     * @return the loader
+     */
+    public MappingsLoader mappingsLoader(FileSource root) {
+        AtomicBoolean loaded = new AtomicBoolean();
+
+        return stubMappings -> {
+            Map<String, StubMapping> stubs = loaded.compareAndSet(false, true)
+                    ? getMappings()
+                    : loose(root).getMappings();
+
+            served.clear();
+            served.putAll(stubs);
+            stubs.values().forEach(stubMappings::addMapping);
+        };
+    }
+
+    /**
+     * Saves stubs WireMock serves back into the files they were loaded from,
+     * as WireMock's own saver does for the stubs it loads, so that saving
+     * them through the admin API overwrites their files rather than adding
+     * copies. Stubs without a file are saved into new ones, named as WireMock
+     * names them.
+     *
+     * @param root the files root
+     * @return the saver
+     */
+    public MappingsSaver mappingsSaver(FileSource root) {
+        return new BundleMappingsSaver(root);
+    }
+
+    /**
+     * @return the stub WireMock is serving for each mapping file, keyed as
+     *         {@link #getMappings()} is, which {@link StubFileWatcher} updates
+     *         as it replaces them
+     */
+    ConcurrentMap<String, StubMapping> served() {
+        return served;
+    }
+
+    static Path pathIn(FileSource root) {
+        return Paths.get(root.getPath(), FILE_NAME);
+    }
+
+    private static List<String> filesReferencedBy(StubMapping mapping) {
+        List<String> names = new ArrayList<>(2);
+        if (mapping.getResponse().getBodyFileName() != null) {
+            names.add(mapping.getResponse().getBodyFileName());
+        }
+
+        CustomMatcherDefinition customMatcher = mapping.getRequest().getCustomMatcher();
+        if (customMatcher != null && WPG_MATCHER.equals(customMatcher.getName())
+                && customMatcher.getParameters().get("xmlLikeFile") instanceof String) {
+            names.add((String) customMatcher.getParameters().get("xmlLikeFile"));
+        }
+
+        return names;
+    }
+
+    private static void writeEntries(DataOutputStream out, Map<String, ByteBuffer> entries) throws IOException {
+        out.writeInt(entries.size());
+        for (Map.Entry<String, ByteBuffer> entry : entries.entrySet()) {
+            ByteBuffer contents = entry.getValue().duplicate();
+            out.writeUTF(entry.getKey());
+            out.writeInt(contents.remaining());
+            while (contents.hasRemaining()) {
+                out.write(contents.get());
+            }
+        }
+    }
+
+    private static String readName(ByteBuffer buffer) {
+        byte[] name = new byte[buffer.getShort() & 0xffff];
+        buffer.get(name);
+        // writeUTF's modified UTF-8 only differs from UTF-8 for NUL and supplementary characters
+        return new String(name, UTF_8);
+    }
+
+    private static ByteBuffer readContents(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        ByteBuffer contents = buffer.slice();
+        contents.limit(length);
+        buffer.position(buffer.position() + length);
+        return contents;
+    }
+
+    private static byte[] readIfPresent(Path path) {
+        try {
+            return Files.readAllBytes(path);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static List<Path> walk(Path start) {
+        if (!Files.isDirectory(start)) {
+            return Collections.emptyList();
+        }
+
+        try (Stream<Path> tree = Files.walk(start)) {
+            return tree.sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * The size and modification time of a file or directory a bundle was
+     * compiled from.
+     */
+    private static final class Source {
+        private final String name;
+        private final long size;
+        private final long lastModified;
+
+        private Source(String name, long size, long lastModified) {
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return the current state of a file, or null if it doesn't exist
+         */
+        static Source of(Path root, Path path) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                String name = root.relativize(path).toString().replace(File.separatorChar, '/');
+                return new Source(name, attributes.isDirectory() ? -1 : attributes.size(),
+                        attributes.lastModifiedTime().toMillis());
+            } catch (NoSuchFileException e) {
+                return null;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Source)) {
+                return false;
+            }
+
+            Source other = (Source) o;
+            return size == other.size && lastModified == other.lastModified && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+
+    /**
+     * Writes stubs to the mapping files they are {@link #served()} from.
+     */
+    private final class BundleMappingsSaver implements MappingsSaver {
+        private final FileSource root;
+        private final IdGenerator idGenerator = new VeryShortIdGenerator();
+
+        private BundleMappingsSaver(FileSource root) {
+            this.root = root;
+        }
+
+        @Override
+        public void save(List<StubMapping> stubs) {
+            for (StubMapping stub : stubs) {
+                if (stub != null && stub.isDirty()) {
+                    save(stub);
+                }
+            }
+        }
+
+        @Override
+        public void save(StubMapping stub) {
+            String name = nameOf(stub);
+            if (name == null) {
+                name = MAPPINGS_ROOT + "/saved-mapping-" + idGenerator.generate() + ".json";
+            }
+
+            root.writeTextFile(name, Json.write(stub));
+            served.put(name, stub);
+            stub.setDirty(false);
+        }
+
+        @Override
+        public void remove(StubMapping stub) {
+            String name = nameOf(stub);
+            if (name != null) {
+                root.deleteFile(name);
+                served.remove(name);
+            }
+        }
+
+        @Override
+        public void removeAll() {
+            for (String name : served.keySet()) {
+                root.deleteFile(name);
+                served.remove(name);
+            }
+        }
+
+        private String nameOf(StubMapping stub) {
+            for (Map.Entry<String, StubMapping> entry : served.entrySet()) {
+                if (entry.getValue().getUuid().equals(stub.getUuid())) {
+                    return entry.getKey();
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Serves files from the bundle where it has them, and from a directory
+     * otherwise.
+     */
+    private final class BundledFileSource implements FileSource {
+        private final FileSource delegate;
+
+        private BundledFileSource(FileSource delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public BinaryFile getBinaryFileNamed(String name) {
+            return getTextFileNamed(name);
+        }
+
+        @Override
+        public TextFile getTextFileNamed(String name) {
+            TextFile file = delegate.getTextFileNamed(name);
+            ByteBuffer contents = files.get(name);
+            return contents != null ? new BundledFile(file.getUri(), contents) : file;
+        }
+
+        @Override
+        public void createIfNecessary() {
+            delegate.createIfNecessary();
+        }
+
+        @Override
+        public FileSource child(String subDirectoryName) {
+            return delegate.child(subDirectoryName);
+        }
+
+        @Override
+        public String getPath() {
+            return delegate.getPath();
+        }
+
+        @Override
+        public URI getUri() {
+            return delegate.getUri();
+        }
+
+        @Override
+        public List<TextFile> listFilesRecursively() {
+            return delegate.listFilesRecursively();
+        }
+
+        @Override
+        public void writeTextFile(String name, String contents) {
+            delegate.writeTextFile(name, contents);
+        }
+
+        @Override
+        public void writeBinaryFile(String name, byte[] contents) {
+            delegate.writeBinaryFile(name, contents);
+        }
+
+        @Override
+        public boolean exists() {
+            return delegate.exists();
+        }
+
+        @Override
+        public void deleteFile(String name) {
+            delegate.deleteFile(name);
+        }
+    }
+
+    /**
+     * A file whose contents are read from the bundle rather than the file system.
+     */
+    private static final class BundledFile extends TextFile {
+        private final ByteBuffer contents;
+
+        private BundledFile(URI uri, ByteBuffer contents) {
+            super(uri);
+            this.contents = contents;
+        }
+
+        @Override
+        public byte[] readContents() {
+            ByteBuffer buffer = contents.duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        @Override
+        public String readContentsAsString() {
+            return UTF_8.decode(contents.duplicate()).toString();
+        }
+    }
+}
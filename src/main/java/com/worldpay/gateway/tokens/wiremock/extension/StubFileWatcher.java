@@ -0,0 +1,359 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.admin.model.SingleStubMappingResult;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.common.Json;
+import com.github.tomakehurst.wiremock.common.Notifier;
+import com.github.tomakehurst.wiremock.core.Admin;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.matching.CustomMatcherDefinition;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.ReferenceDocuments;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.github.tomakehurst.wiremock.core.WireMockApp.FILES_ROOT;
+import static com.github.tomakehurst.wiremock.core.WireMockApp.MAPPINGS_ROOT;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches the {@code mappings} and {@code __files} directories under a files
+ * root, so stubs and the files they use can be edited while the server runs,
+ * without resetting WireMock and throwing away every cached template, document
+ * and plan.
+ *
+ * <p>When a file under {@code __files} changes, only what is cached for that
+ * file is dropped: its compiled templates and static contents (see
+ * {@link WpgResponseTemplateTransformer}) and its parsed reference document
+ * (see {@link ReferenceDocuments}). When a mapping changes, the one stub loaded
+ * from it is replaced in WireMock, keeping its id and so its place among the
+ * others, and the plan and index entries of the old version are dropped. The
+ * stub being served for each file is known from the {@link StubBundle} the
+ * stubs were loaded from, so finding it is a lookup by id. The new version is
+ * compiled from the shared caches straight away, and any problems with it are
+ * reported. New and deleted mappings are added and removed in the same way.
+ *
+ * <p>Mapping files WireMock writes itself are left alone. A file holding a stub
+ * WireMock already serves, with the same id, is one it saved through its admin
+ * API, and is just noted as that stub's file. While WireMock is recording, new
+ * mapping files are its recordings, which it only serves once restarted.
+ *
+ * <p>Events are gathered until the directories have been quiet for
+ * {@value #QUIET_MILLIS}ms, since editors often write a file in several steps.
+ * The caches still check each file's modification time, so changes are seen
+ * even where no events are delivered, as on some bind-mounted volumes, just
+ * not as precisely.
+ *
+ * <p>The watcher is on by default, and is turned off with the system property
+ * {@value #ENABLED_PROPERTY}{@code =false}.
+ */
+public final class StubFileWatcher implements Closeable {
+
+    public static final String ENABLED_PROPERTY = "wpg.watchStubs";
+
+    static final long QUIET_MILLIS = 100;
+
+    private static final String WPG_MATCHER = "wpgMatcher";
+
+    private final FileSource root;
+    private final Path mappings;
+    private final Path files;
+    private final Admin admin;
+    private final Notifier notifier;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+
+    // the stub WireMock is serving for each mapping file, by name
+    private final Map<String, StubMapping> served;
+
+    private final boolean recording;
+
+    private final Thread thread;
+
+    private StubFileWatcher(FileSource root, Admin admin, Notifier notifier, StubBundle bundle, boolean recording)
+            throws IOException {
+        this.root = root;
+        this.mappings = directory(root, MAPPINGS_ROOT);
+        this.files = directory(root, FILES_ROOT);
+        this.admin = admin;
+        this.notifier = notifier;
+        this.served = bundle.served();
+        this.recording = recording;
+        this.watchService = mappings.getFileSystem().newWatchService();
+        this.thread = new Thread(this::watch, "wpg-stub-file-watcher");
+        this.thread.setDaemon(true);
+
+        for (Path directory : new Path[] {mappings, files}) {
+            if (Files.isDirectory(directory)) {
+                registerAll(directory);
+            }
+        }
+    }
+
+    /**
+     * Creates a watcher without starting it, for tests.
+     */
+    static StubFileWatcher create(FileSource root, Admin admin, Notifier notifier, StubBundle bundle,
+                                  boolean recording) throws IOException {
+        return new StubFileWatcher(root, admin, notifier, bundle, recording);
+    }
+
+    /**
+     * Starts watching the stubs under a files root, which WireMock has loaded
+     * from a bundle.
+     *
+     * @param root the files root
+     * @param admin the server the stubs are loaded into
+     * @param notifier where to report reloads and problems
+     * @param bundle the bundle the stubs were loaded from (see {@link StubBundle#mappingsLoader(FileSource)})
+     * @param recording true if WireMock is recording mappings, which are then left for its next start
+     * @return the running watcher
+     * @throws IOException if the directories can't be watched
+     */
+    public static StubFileWatcher start(FileSource root, Admin admin, Notifier notifier, StubBundle bundle,
+                                        boolean recording) throws IOException {
+        StubFileWatcher watcher = new StubFileWatcher(root, admin, notifier, bundle, recording);
+        watcher.thread.start();
+        return watcher;
+    }
+
+    /**
+     * @return false if {@value #ENABLED_PROPERTY} is set to {@code false}
+     */
+    public static boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY, "true").trim());
+    }
+
+    /**
+     * Stops watching. Changes made after this are only seen through the
+     * caches' modification time checks.
+     */
+    @Override
+    public void close() {
+        thread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            notifier.error("Couldn't stop watching stub files", e);
+        }
+    }
+
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<Path> changed = new LinkedHashSet<>();
+                WatchKey key = watchService.take();
+                while (key != null) {
+                    collect(key, changed);
+                    key = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                }
+
+                for (Path path : changed) {
+                    try {
+                        changed(path);
+                    } catch (RuntimeException e) {
+                        notifier.error(name(path) + ": couldn't be reloaded", e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private void collect(WatchKey key, Set<Path> changed) {
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || directory == null) {
+                // events were lost, so treat everything as changed
+                for (String name : served.keySet()) {
+                    changed.add(mappings.getParent().resolve(name).normalize());
+                }
+                changed.addAll(allFiles(mappings));
+                changed.addAll(allFiles(files));
+                continue;
+            }
+
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                try {
+                    registerAll(path);
+                } catch (IOException e) {
+                    notifier.error(name(path) + ": can't be watched", e);
+                }
+                changed.addAll(allFiles(path));
+            } else {
+                changed.add(path);
+            }
+        }
+
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    /**
+     * Reloads whatever depends on one changed, created or deleted file.
+     *
+     * @param path the absolute, normalised path of the file
+     */
+    void changed(Path path) {
+        if (path.startsWith(mappings)) {
+            if (path.getFileName().toString().endsWith(".json") || served.containsKey(name(path))) {
+                mappingChanged(path);
+            }
+        } else if (path.startsWith(files) && !Files.isDirectory(path)) {
+            fileChanged(path);
+        }
+    }
+
+    private void fileChanged(Path path) {
+        URI uri = path.toFile().toURI();
+        ReferenceDocuments.shared().invalidate(uri);
+        WpgResponseTemplateTransformer.invalidateFile(uri);
+
+        notifier.info("Reloaded " + name(path));
+    }
+
+    private void mappingChanged(Path path) {
+        String name = name(path);
+        StubMapping previous = served.get(name);
+        StubMapping current = null;
+        if (Files.isRegularFile(path)) {
+            current = read(path);
+            if (current == null) {
+                // keep serving the previous version until the file is fixed
+                return;
+            }
+        }
+
+        // WireMock may have been reset since, without the stub, or have
+        // replaced it through its admin API
+        StubMapping serving = previous != null ? serving(previous.getUuid()) : null;
+        if (current != null) {
+            StubMapping sameId = serving != null && serving.getUuid().equals(current.getUuid())
+                    ? serving
+                    : serving(current.getUuid());
+            if (sameId != null && Json.write(sameId).equals(Json.write(current))) {
+                // WireMock wrote the file itself, saving a stub it serves
+                served.put(name, sameId);
+                return;
+            }
+            if (serving == null) {
+                serving = sameId;
+            }
+            if (serving == null && recording) {
+                // one of WireMock's recordings, which it serves from its next start
+                return;
+            }
+        }
+
+        if (current == null) {
+            if (serving != null) {
+                admin.removeStubMapping(serving);
+            }
+            served.remove(name);
+        } else if (serving != null) {
+            current.setUuid(serving.getUuid());
+            admin.editStubMapping(current);
+            served.put(name, current);
+        } else {
+            admin.addStubMapping(current);
+            served.put(name, current);
+        }
+
+        Parameters previousParameters = serving != null ? matcherParameters(serving) : null;
+        if (previousParameters != null) {
+            WpgRequestMatcher.forget(previousParameters);
+        }
+
+        if (current == null) {
+            notifier.info("Removed " + name);
+        } else {
+            for (String problem : StubWarmUp.precompile(root, name, current)) {
+                notifier.error(problem);
+            }
+            notifier.info("Reloaded " + name);
+        }
+    }
+
+    /**
+     * @return the stub WireMock serves with an id, or null if there is none
+     */
+    private StubMapping serving(UUID id) {
+        SingleStubMappingResult result = admin.getStubMapping(id);
+        return result.isPresent() ? result.getItem() : null;
+    }
+
+    private static Parameters matcherParameters(StubMapping mapping) {
+        CustomMatcherDefinition customMatcher = mapping.getRequest().getCustomMatcher();
+        return customMatcher != null && WPG_MATCHER.equals(customMatcher.getName())
+                ? customMatcher.getParameters()
+                : null;
+    }
+
+    private StubMapping read(Path path) {
+        try {
+            return StubMapping.buildFrom(new String(Files.readAllBytes(path), UTF_8));
+        } catch (Exception e) {
+            // WireMock rethrows Jackson's checked exceptions unchanged
+            notifier.error(name(path) + ": mapping can't be read: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void registerAll(Path start) throws IOException {
+        try (Stream<Path> tree = Files.walk(start)) {
+            for (Path directory : tree.filter(Files::isDirectory).collect(Collectors.toList())) {
+                WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                directories.put(key, directory);
+            }
+        }
+    }
+
+    private static List<Path> allFiles(Path start) {
+        if (!Files.isDirectory(start)) {
+            return Collections.emptyList();
+        }
+
+        try (Stream<Path> tree = Files.walk(start)) {
+            return tree.filter(Files::isRegularFile).collect(Collectors.toList());
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    private String name(Path path) {
+        Path base = path.startsWith(mappings) ? mappings : files;
+        String prefix = base == mappings ? MAPPINGS_ROOT : FILES_ROOT;
+        return prefix + "/" + base.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private static Path directory(FileSource root, String name) {
+        return Paths.get(root.child(name).getPath()).toAbsolutePath().normalize();
+    }
+}
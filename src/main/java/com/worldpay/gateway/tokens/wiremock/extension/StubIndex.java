@@ -0,0 +1,243 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.google.common.collect.MapMaker;
+import com.worldpay.gateway.tokens.wiremock.extension.matchers.MatchPlan;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.XPathCache.CompiledXPath;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Indexes wpgMatcher stubs by request method, exact url and XML root element
+ * name, so that stubs which can't possibly match a request are rejected
+ * without being evaluated.
+ *
+ * <p>WireMock still offers every stub to {@link WpgRequestMatcher} in turn, so
+ * the index is consulted once per stub. The set of buckets which could apply to
+ * a request is looked up once per request and held in its {@link RequestContext};
+ * after that, rejecting a stub costs a few identity lookups.
+ *
+ * <p>Stubs are indexed the first time they're seen, by {@link Parameters}
+ * identity, and are dropped from the index when WireMock no longer references
+ * them. A stub which doesn't constrain one of the keys is indexed under a
+ * wildcard for that key.
+ */
+class StubIndex {
+
+    /**
+     * Matches an XPath expression starting with a plain child step from the
+     * document root, capturing the name of that step. Unions are excluded
+     * because they may select from elsewhere.
+     */
+    private static final Pattern XPATH_ROOT = Pattern.compile("^/([A-Za-z_][\\w.\\-]*)(?:[/\\[][^|]*)?$");
+
+    private final ConcurrentMap<Parameters, Boolean> indexed = new MapMaker().weakKeys().makeMap();
+    private final ConcurrentMap<RouteKey, Set<Parameters>> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong bucketsVersion = new AtomicLong();
+
+    private volatile boolean anyRootKeys;
+
+    /**
+     * Checks whether a stub could match a request. Stubs which haven't been
+     * seen before are indexed first.
+     *
+     * @param request the request being matched
+     * @param parameters the stub's wpgMatcher parameters
+     * @return false if the stub can't possibly match the request
+     */
+    boolean isCandidate(Request request, Parameters parameters) {
+        if (!indexed.containsKey(parameters)) {
+            add(parameters);
+        }
+
+        return routeFor(request).contains(parameters);
+    }
+
+    /**
+     * Drops a stub from the index, for example when {@link StubFileWatcher}
+     * replaces it. Stubs are removed by identity, so other stubs with equal
+     * parameters, which differ only in their responses, stay indexed.
+     *
+     * @param parameters the parameters instance WireMock served the stub with
+     */
+    void remove(Parameters parameters) {
+        // out of the buckets first, so the stub can't be seen as indexed
+        // without being in them
+        for (Set<Parameters> bucket : buckets.values()) {
+            bucket.remove(parameters);
+        }
+        indexed.remove(parameters);
+    }
+
+    /**
+     * @return the number of distinct routes stubs are indexed under
+     */
+    int bucketCount() {
+        return buckets.size();
+    }
+
+    private void add(Parameters parameters) {
+        // stubs with invalid plans never match, so they're indexed without a
+        // bucket and rejected by every request
+        MatchPlan plan = MatchPlan.of(parameters);
+        if (plan.isValid()) {
+            RouteKey key = new RouteKey(plan.getMethod(), plan.getUrl(), rootOf(plan));
+
+            // set before a new bucket's version is published, so a route built
+            // for that version looks for root buckets
+            if (key.root != null) {
+                anyRootKeys = true;
+            }
+            bucketFor(key).add(parameters);
+        }
+
+        indexed.put(parameters, Boolean.TRUE);
+    }
+
+    private Set<Parameters> bucketFor(RouteKey key) {
+        Set<Parameters> bucket = buckets.get(key);
+        if (bucket == null) {
+            Set<Parameters> created = Collections.newSetFromMap(new MapMaker().weakKeys().makeMap());
+            bucket = buckets.putIfAbsent(key, created);
+            if (bucket == null) {
+                bucket = created;
+                bucketsVersion.incrementAndGet();
+            }
+        }
+
+        return bucket;
+    }
+
+    private Route routeFor(Request request) {
+        RequestContext context = RequestContext.of(request);
+        long version = bucketsVersion.get();
+
+        Route route = context.getRoute();
+        if (route == null || route.index != this || route.version != version) {
+            route = new Route(this, version, request);
+            context.setRoute(route);
+        }
+
+        return route;
+    }
+
+    /**
+     * Works out the name of the root element a stub requires, from either its
+     * xpath or its inline xmlLike document.
+     */
+    private static String rootOf(MatchPlan plan) {
+        if (plan.getXpaths() != null) {
+            for (CompiledXPath xpath : plan.getXpaths()) {
+                Matcher matcher = XPATH_ROOT.matcher(xpath.getExpression());
+                if (matcher.matches()) {
+                    return matcher.group(1);
+                }
+            }
+        }
+
+        if (plan.getXmlLike() != null && plan.getXmlLike().isValid()) {
+            return localName(plan.getXmlLike().getDocument().getDocumentElement().getNodeName());
+        }
+
+        return null;
+    }
+
+    private static String localName(String nodeName) {
+        return nodeName.substring(nodeName.indexOf(':') + 1);
+    }
+
+    /**
+     * The buckets which apply to one request, for one version of the index.
+     */
+    static final class Route {
+        private final StubIndex index;
+        private final long version;
+        private final List<Set<Parameters>> buckets = new ArrayList<>(8);
+
+        private Route(StubIndex index, long version, Request request) {
+            this.index = index;
+            this.version = version;
+
+            String method = request.getMethod().getName();
+            String url = request.getUrl();
+            String root = index.anyRootKeys ? requestRoot(request) : null;
+
+            for (String m : new String[] {method, null}) {
+                for (String u : new String[] {url, null}) {
+                    addBucket(new RouteKey(m, u, null));
+                    if (root != null) {
+                        addBucket(new RouteKey(m, u, root));
+                    }
+                }
+            }
+        }
+
+        private void addBucket(RouteKey key) {
+            Set<Parameters> bucket = index.buckets.get(key);
+            if (bucket != null) {
+                buckets.add(bucket);
+            }
+        }
+
+        boolean contains(Parameters parameters) {
+            for (Set<Parameters> bucket : buckets) {
+                if (bucket.contains(parameters)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private static String requestRoot(Request request) {
+            // null if not XML, in which case no stub requiring a root element can match
+            String root = RequestContext.of(request).getRootElementName();
+            return root != null ? localName(root) : null;
+        }
+    }
+
+    /**
+     * Method, url and root element name, any of which may be null to mean "any".
+     */
+    private static final class RouteKey {
+        private final String method;
+        private final String url;
+        private final String root;
+
+        private RouteKey(String method, String url, String root) {
+            this.method = method;
+            this.url = url;
+            this.root = root;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RouteKey)) {
+                return false;
+            }
+
+            RouteKey other = (RouteKey) o;
+            return Objects.equals(method, other.method)
+                    && Objects.equals(url, other.url)
+                    && Objects.equals(root, other.root);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(method, url, root);
+        }
+    }
+}
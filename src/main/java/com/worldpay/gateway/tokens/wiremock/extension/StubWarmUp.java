@@ -0,0 +1,363 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.common.Notifier;
+import com.github.tomakehurst.wiremock.common.TextFile;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.http.HttpHeader;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.github.tomakehurst.wiremock.matching.CustomMatcherDefinition;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+import com.worldpay.gateway.tokens.wiremock.extension.matchers.MatchPlan;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.Metrics;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.ReferenceDocuments;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.XPathCache.CompiledXPath;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.core.WireMockApp.FILES_ROOT;
+import static com.github.tomakehurst.wiremock.core.WireMockApp.MAPPINGS_ROOT;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Prepares the extensions for the stubs under a files root before the server
+ * starts, so the first requests it serves aren't slowed by lazy compilation or
+ * a cold JIT.
+ *
+ * <p>{@link #precompile()} compiles every wpgMatcher's XPath expressions and
+ * reference documents and every response's templates into the shared caches,
+ * reporting any which are invalid. Stubs taken from a {@link StubBundle} are
+ * the ones WireMock serves, so their plans are ready too; stubs read from the
+ * mapping files are compiled again when WireMock loads them, but from the
+ * cached expressions and documents.
+ *
+ * <p>{@link #warmUp(int)} then sends synthetic requests, made up from each
+ * stub's own parameters, through a matcher and transformer. The number of
+ * requests is set with the system property {@value #REQUESTS_PROPERTY}, and
+ * {@code 0} turns the warm-up off. Metrics and traces recorded while warming
+ * up are discarded, and seeded random digits start again from their seed.
+ */
+public final class StubWarmUp {
+
+    public static final String REQUESTS_PROPERTY = "wpg.warmUp.requests";
+
+    static final int DEFAULT_REQUESTS = 1_000;
+
+    private static final String WPG_MATCHER = "wpgMatcher";
+
+    private final FileSource root;
+    private final FileSource files;
+    private final List<Stub> stubs;
+    private final List<String> loadProblems;
+
+    private StubWarmUp(FileSource root) {
+        this.root = root;
+        this.files = root.child(FILES_ROOT);
+        this.loadProblems = new ArrayList<>();
+        this.stubs = load(root, loadProblems);
+    }
+
+    private StubWarmUp(FileSource root, FileSource files, List<Stub> stubs, List<String> loadProblems) {
+        this.root = root;
+        this.files = files;
+        this.stubs = stubs;
+        this.loadProblems = loadProblems;
+    }
+
+    /**
+     * Loads the stubs under a files root, as WireMock will.
+     *
+     * @param root the files root, containing {@code mappings} and {@code __files}
+     * @return the loaded stubs, ready to be precompiled
+     */
+    public static StubWarmUp load(FileSource root) {
+        return new StubWarmUp(root);
+    }
+
+    /**
+     * Takes the stubs under a files root from a bundle, which holds the very
+     * {@link StubMapping}s WireMock loads, along with the files they use.
+     *
+     * @param root the files root
+     * @param bundle the bundle compiled from the files root
+     * @return the stubs, ready to be precompiled
+     */
+    public static StubWarmUp load(FileSource root, StubBundle bundle) {
+        List<Stub> stubs = new ArrayList<>();
+        for (Map.Entry<String, StubMapping> mapping : bundle.getMappings().entrySet()) {
+            stubs.add(new Stub(mapping.getKey(), mapping.getValue()));
+        }
+
+        return new StubWarmUp(root, bundle.files(root.child(FILES_ROOT)), stubs,
+                Collections.emptyList());
+    }
+
+    /**
+     * Loads, precompiles and warms up the stubs under a files root, reporting
+     * any invalid stubs as errors.
+     *
+     * @param root the files root
+     * @param notifier where to report progress and problems
+     */
+    public static void run(FileSource root, Notifier notifier) {
+        run(load(root), notifier);
+    }
+
+    /**
+     * Precompiles and warms up the stubs in a bundle, reporting any invalid
+     * stubs as errors.
+     *
+     * @param root the files root
+     * @param bundle the bundle compiled from the files root
+     * @param notifier where to report progress and problems
+     */
+    public static void run(FileSource root, StubBundle bundle, Notifier notifier) {
+        run(load(root, bundle), notifier);
+    }
+
+    private static void run(StubWarmUp warmUp, Notifier notifier) {
+        long start = System.nanoTime();
+
+        for (String problem : warmUp.precompile()) {
+            notifier.error(problem);
+        }
+
+        int requests = warmUp.warmUp(requestsFromSystemProperties());
+        Metrics.shared().reset();
+        MatchTraces.shared().clear();
+        WpgResponseTemplateTransformer.resetRandomDigits();
+
+        notifier.info(String.format("Precompiled %d stubs and warmed up with %d requests in %d ms",
+                warmUp.size(), requests, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    /**
+     * @return the number of warm-up requests set by {@value #REQUESTS_PROPERTY},
+     *         or {@value #DEFAULT_REQUESTS} if it isn't set
+     * @throws NumberFormatException if the property isn't a valid int
+     */
+    static int requestsFromSystemProperties() {
+        String requests = System.getProperty(REQUESTS_PROPERTY);
+        return requests != null ? Integer.parseInt(requests.trim()) : DEFAULT_REQUESTS;
+    }
+
+    /**
+     * @return the number of stubs loaded
+     */
+    public int size() {
+        return stubs.size();
+    }
+
+    /**
+     * Compiles every stub's matcher parameters and response templates.
+     *
+     * @return a description of each stub which couldn't be loaded or is
+     *         invalid, and why
+     */
+    public List<String> precompile() {
+        List<String> problems = new ArrayList<>(loadProblems);
+        WpgResponseTemplateTransformer transformer = new WpgResponseTemplateTransformer();
+
+        for (Stub stub : stubs) {
+            if (stub.matcherParameters != null) {
+                precompileMatcher(stub, problems);
+            }
+
+            try {
+                transformer.precompile(stub.response, files, stub.transformerParameters);
+            } catch (RuntimeException e) {
+                problems.add(stub.name + ": response template can't be compiled: " + e.getMessage());
+            }
+        }
+
+        return Collections.unmodifiableList(problems);
+    }
+
+    /**
+     * Compiles a single stub, as {@link #precompile()} does for each stub it loads.
+     *
+     * @param root the files root
+     * @param name the name to report the stub's problems under
+     * @param mapping the stub
+     * @return a description of each of the stub's problems
+     */
+    static List<String> precompile(FileSource root, String name, StubMapping mapping) {
+        return new StubWarmUp(root, root.child(FILES_ROOT), Collections.singletonList(new Stub(name, mapping)),
+                Collections.emptyList()).precompile();
+    }
+
+    /**
+     * Sends synthetic requests through a matcher and transformer, taking each
+     * stub in turn as the source of the next request. Each request is matched
+     * against the stubs in order until one matches, as WireMock would, and then
+     * the response of the stub it was made from is transformed.
+     *
+     * @param requests the number of requests to send
+     * @return the number of requests sent, which is 0 if there are no wpgMatcher stubs
+     */
+    public int warmUp(int requests) {
+        List<Stub> samples = new ArrayList<>();
+        for (Stub stub : stubs) {
+            if (stub.matcherParameters != null && MatchPlan.of(stub.matcherParameters).isValid()) {
+                samples.add(stub);
+            }
+        }
+
+        if (samples.isEmpty() || requests <= 0) {
+            return 0;
+        }
+
+        WpgRequestMatcher matcher = new WpgRequestMatcher(root);
+        WpgResponseTemplateTransformer transformer = new WpgResponseTemplateTransformer();
+
+        for (int i = 0; i < requests; i++) {
+            Stub sample = samples.get(i % samples.size());
+            Request request = sample.newRequest(files);
+
+            for (Stub stub : samples) {
+                if (matcher.match(request, stub.matcherParameters).isExactMatch()) {
+                    break;
+                }
+            }
+
+            try {
+                transformer.transform(request, sample.response, files, sample.transformerParameters);
+            } catch (RuntimeException e) {
+                // already reported by precompile()
+            }
+        }
+
+        return requests;
+    }
+
+    private void precompileMatcher(Stub stub, List<String> problems) {
+        MatchPlan plan = MatchPlan.of(stub.matcherParameters);
+        if (!plan.isValid()) {
+            problems.add(stub.name + ": unsupported or malformed wpgMatcher parameters");
+            return;
+        }
+
+        if (plan.getXpaths() != null) {
+            for (CompiledXPath xpath : plan.getXpaths()) {
+                if (!xpath.isValid()) {
+                    problems.add(stub.name + ": invalid xpath " + xpath.getExpression());
+                }
+            }
+        }
+
+        if (plan.getXmlLike() != null && !plan.getXmlLike().isValid()) {
+            problems.add(stub.name + ": xmlLike is not well-formed XML");
+        }
+
+        if (plan.getXmlLikeFile() != null) {
+            try {
+                TextFile file = files.getTextFileNamed(plan.getXmlLikeFile());
+                if (!ReferenceDocuments.shared().file(file).isValid()) {
+                    problems.add(stub.name + ": xmlLikeFile " + plan.getXmlLikeFile() + " is not well-formed XML");
+                }
+            } catch (RuntimeException e) {
+                problems.add(stub.name + ": xmlLikeFile " + plan.getXmlLikeFile() + " can't be read");
+            }
+        }
+    }
+
+    private static List<Stub> load(FileSource root, List<String> problems) {
+        FileSource mappings = root.child(MAPPINGS_ROOT);
+        if (!mappings.exists()) {
+            return Collections.emptyList();
+        }
+
+        List<Stub> stubs = new ArrayList<>();
+        URI mappingsUri = mappings.getUri();
+        for (TextFile file : mappings.listFilesRecursively()) {
+            if (!file.name().endsWith(".json")) {
+                continue;
+            }
+
+            String name = MAPPINGS_ROOT + "/" + mappingsUri.relativize(file.getUri()).getPath();
+            try {
+                stubs.add(new Stub(name, StubMapping.buildFrom(file.readContentsAsString())));
+            } catch (Exception e) {
+                // WireMock rethrows Jackson's checked exceptions unchanged
+                problems.add(name + ": mapping can't be read: " + e.getMessage());
+            }
+        }
+
+        return stubs;
+    }
+
+    /**
+     * A stub loaded from a mapping file.
+     */
+    private static final class Stub {
+        private final String name;
+        private final Parameters matcherParameters;
+        private final ResponseDefinition response;
+        private final Parameters transformerParameters;
+
+        private Stub(String name, StubMapping mapping) {
+            this.name = name;
+
+            CustomMatcherDefinition customMatcher = mapping.getRequest().getCustomMatcher();
+            this.matcherParameters = customMatcher != null && WPG_MATCHER.equals(customMatcher.getName())
+                    ? customMatcher.getParameters()
+                    : null;
+
+            this.response = mapping.getResponse();
+            this.transformerParameters = response.getTransformerParameters();
+        }
+
+        /**
+         * Makes up a request from the stub's wpgMatcher parameters. The body is
+         * the stub's reference document if it has one, otherwise the smallest
+         * document its first xpath selects something in, where that can be
+         * worked out. Header values are sent as they are, so those which are
+         * regular expressions won't usually match.
+         */
+        @SuppressWarnings("unchecked")
+        private Request newRequest(FileSource files) {
+            MatchPlan plan = MatchPlan.of(matcherParameters);
+
+            List<HttpHeader> headers = new ArrayList<>();
+            Map<String, String> headerParameters = (Map<String, String>) matcherParameters.get("headers");
+            if (headerParameters != null) {
+                for (Map.Entry<String, String> header : headerParameters.entrySet()) {
+                    headers.add(HttpHeader.httpHeader(header.getKey(), header.getValue()));
+                }
+            }
+
+            String method = plan.getMethod() != null ? plan.getMethod() : "POST";
+            String url = plan.getUrl() != null ? plan.getUrl() : "/";
+
+            return new SyntheticRequest(RequestMethod.fromString(method), url, headers, sampleBody(plan, files));
+        }
+
+        private byte[] sampleBody(MatchPlan plan, FileSource files) {
+            if (matcherParameters.get("xmlLike") != null) {
+                return ((String) matcherParameters.get("xmlLike")).getBytes(UTF_8);
+            }
+
+            if (plan.getXmlLikeFile() != null) {
+                try {
+                    return files.getBinaryFileNamed(plan.getXmlLikeFile()).readContents();
+                } catch (RuntimeException e) {
+                    // already reported by precompile()
+                }
+            }
+
+            if (plan.getXpaths() != null && !plan.getXpaths().isEmpty()
+                    && plan.getXpaths().get(0).getSimpleForm() != null) {
+                return plan.getXpaths().get(0).getSimpleForm().sampleDocument().getBytes(UTF_8);
+            }
+
+            return "<warmUp/>".getBytes(UTF_8);
+        }
+    }
+}
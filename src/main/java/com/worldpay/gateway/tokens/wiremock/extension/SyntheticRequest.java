@@ -0,0 +1,121 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.common.Urls;
+import com.github.tomakehurst.wiremock.http.ContentTypeHeader;
+import com.github.tomakehurst.wiremock.http.Cookie;
+import com.github.tomakehurst.wiremock.http.HttpHeader;
+import com.github.tomakehurst.wiremock.http.HttpHeaders;
+import com.github.tomakehurst.wiremock.http.QueryParameter;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+
+import java.net.URI;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A request made up from a stub's parameters, which {@link StubWarmUp} sends
+ * through the matcher and transformer in place of real traffic.
+ *
+ * <p>The extensions remember what they have worked out about a request against
+ * the request instance, so a new one must be created for every use.
+ */
+final class SyntheticRequest implements Request {
+
+    private final RequestMethod method;
+    private final String url;
+    private final HttpHeaders headers;
+    private final byte[] body;
+
+    SyntheticRequest(RequestMethod method, String url, List<HttpHeader> headers, byte[] body) {
+        this.method = method;
+        this.url = url;
+        this.headers = new HttpHeaders(headers);
+        this.body = body;
+    }
+
+    @Override
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public String getAbsoluteUrl() {
+        return "http://localhost" + url;
+    }
+
+    @Override
+    public RequestMethod getMethod() {
+        return method;
+    }
+
+    @Override
+    public String getClientIp() {
+        return "127.0.0.1";
+    }
+
+    @Override
+    public String getHeader(String key) {
+        return header(key).firstValue();
+    }
+
+    @Override
+    public HttpHeader header(String key) {
+        return headers.getHeader(key);
+    }
+
+    @Override
+    public ContentTypeHeader contentTypeHeader() {
+        return headers.getContentTypeHeader();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public boolean containsHeader(String key) {
+        return headers.getHeader(key).isPresent();
+    }
+
+    @Override
+    public Set<String> getAllHeaderKeys() {
+        return headers.keys();
+    }
+
+    @Override
+    public Map<String, Cookie> getCookies() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public QueryParameter queryParameter(String key) {
+        return Urls.splitQuery(URI.create(url)).get(key);
+    }
+
+    @Override
+    public byte[] getBody() {
+        return body;
+    }
+
+    @Override
+    public String getBodyAsString() {
+        return new String(body, UTF_8);
+    }
+
+    @Override
+    public String getBodyAsBase64() {
+        return Base64.getEncoder().encodeToString(body);
+    }
+
+    @Override
+    public boolean isBrowserProxyRequest() {
+        return false;
+    }
+}
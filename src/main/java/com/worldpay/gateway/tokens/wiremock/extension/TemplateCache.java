@@ -0,0 +1,165 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.github.jknack.handlebars.Template;
+import com.github.tomakehurst.wiremock.common.BinaryFile;
+import com.github.tomakehurst.wiremock.common.TextFile;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.LatencyHistogram;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A bounded cache of compiled Handlebars {@link Template}s.
+ *
+ * <p>Inline templates are keyed by their source. Templates read from body files
+ * are keyed by file and modification time, so a cached file template is neither
+ * re-read nor recompiled until the file changes. When the cache is full the
+ * least recently used templates are evicted first.
+ *
+ * <p>Compilations, including reading a template file, are timed in the shared
+ * {@link Metrics}.
+ */
+class TemplateCache {
+
+    static final long MAXIMUM_SIZE = 1_000;
+
+    private static final LatencyHistogram compileTime = Metrics.shared()
+            .histogram("wpg_template_compile_duration_seconds", "Time taken to compile a response template.");
+
+    private final Handlebars handlebars;
+    private final Cache<Object, Template> cache;
+
+    TemplateCache(Handlebars handlebars) {
+        this(handlebars, MAXIMUM_SIZE);
+    }
+
+    TemplateCache(Handlebars handlebars, long maximumSize) {
+        this.handlebars = handlebars;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Gets a compiled template for some template source, compiling it if necessary.
+     *
+     * @param content the template source
+     * @return the compiled template
+     * @throws IOException if the template can't be compiled
+     */
+    Template compileInline(String content) throws IOException {
+        return get(content, () -> handlebars.compileInline(content));
+    }
+
+    /**
+     * Gets a compiled template for the contents of a file, reading and compiling
+     * the file if it hasn't been seen before or has changed since it was compiled.
+     *
+     * @param file the file containing the template source
+     * @return the compiled template
+     * @throws IOException if the template can't be compiled
+     */
+    Template compileFile(TextFile file) throws IOException {
+        return get(FileKey.of(file), () -> handlebars.compileInline(file.readContentsAsString()));
+    }
+
+    /**
+     * Drops every compiled version of a template file, for example when
+     * {@link StubFileWatcher} sees it change.
+     *
+     * @param uri the file's URI
+     */
+    void invalidate(URI uri) {
+        cache.asMap().keySet().removeIf(key -> key instanceof FileKey && ((FileKey) key).isFor(uri));
+    }
+
+    /**
+     * @return hit, miss and eviction counts for this cache
+     */
+    CacheStats stats() {
+        return cache.stats();
+    }
+
+    long size() {
+        return cache.size();
+    }
+
+    private Template get(Object key, Callable<Template> compiler) throws IOException {
+        try {
+            return cache.get(key, () -> {
+                long start = System.nanoTime();
+                try {
+                    return compiler.call();
+                } finally {
+                    compileTime.recordSince(start);
+                }
+            });
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            // unchecked compilation failures, e.g. HandlebarsException
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * Identifies a version of a file. Files which aren't on the local file system
+     * (for example, on the classpath) are assumed never to change.
+     */
+    static final class FileKey {
+        private final URI uri;
+        private final long lastModified;
+
+        private FileKey(URI uri, long lastModified) {
+            this.uri = uri;
+            this.lastModified = lastModified;
+        }
+
+        static FileKey of(BinaryFile file) {
+            URI uri = file.getUri();
+            long lastModified = "file".equals(uri.getScheme()) ? new File(uri).lastModified() : 0;
+
+            return new FileKey(uri, lastModified);
+        }
+
+        /**
+         * @param uri a file URI, which may contain {@code .} or {@code ..} segments
+         * @return true if this is a version of the file
+         */
+        boolean isFor(URI uri) {
+            return this.uri.normalize().equals(uri.normalize());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FileKey)) {
+                return false;
+            }
+
+            FileKey other = (FileKey) o;
+            return lastModified == other.lastModified && uri.equals(other.uri);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(uri, lastModified);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.admin.AdminTask;
+import com.github.tomakehurst.wiremock.admin.Router;
+import com.github.tomakehurst.wiremock.admin.model.PathParams;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.core.Admin;
+import com.github.tomakehurst.wiremock.extension.AdminApiExtension;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.worldpay.gateway.tokens.wiremock.extension.matchers.HeaderMatcher;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.Metrics;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.ReferenceDocuments;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.XPathCache;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves the shared {@link Metrics} from {@code /__admin/wpg/metrics}, in the
+ * Prometheus text exposition format.
+ *
+ * <p>The metrics include match attempts and matches, which are counted for
+ * each stub if asked for (see
+ * {@link com.worldpay.gateway.tokens.wiremock.extension.matchers.MatchPlan}),
+ * XML parse counts, sizes and times, XPath evaluation times, template compile
+ * and render times, and the hit rates of the shared caches.
+ */
+public class WpgMetricsEndpoint implements AdminApiExtension {
+
+    public static final String PATH = "/wpg/metrics";
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Metrics metrics;
+
+    public WpgMetricsEndpoint() {
+        this(Metrics.shared());
+    }
+
+    WpgMetricsEndpoint(Metrics metrics) {
+        this.metrics = metrics;
+        metrics.registerCache("xpath", () -> XPathCache.shared().stats());
+        metrics.registerCache("headers", HeaderMatcher::stats);
+        metrics.registerCache("referenceDocuments", () -> ReferenceDocuments.shared().stats());
+    }
+
+    @Override
+    public void contributeAdminApiRoutes(Router router) {
+        router.add(RequestMethod.GET, PATH, new MetricsTask());
+    }
+
+    @Override
+    public String getName() {
+        return "wpg-metrics";
+    }
+
+    private final class MetricsTask implements AdminTask {
+        @Override
+        public ResponseDefinition execute(Admin admin, Request request, PathParams pathParams) {
+            // sent as bytes, since WireMock would encode a String body with the
+            // platform charset
+            return ResponseDefinitionBuilder.responseDefinition()
+                    .withStatus(200)
+                    .withHeader("Content-Type", CONTENT_TYPE)
+                    .withBody(metrics.render().getBytes(StandardCharsets.UTF_8))
+                    .build();
+        }
+    }
+}
@@ -5,21 +5,19 @@ import com.github.tomakehurst.wiremock.extension.Parameters;
 import com.github.tomakehurst.wiremock.http.Request;
 import com.github.tomakehurst.wiremock.matching.MatchResult;
 import com.github.tomakehurst.wiremock.matching.RequestMatcherExtension;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import com.worldpay.gateway.tokens.wiremock.WpgWireMockServerRunner;
 import com.worldpay.gateway.tokens.wiremock.extension.matchers.DocumentMatcher;
+import com.worldpay.gateway.tokens.wiremock.extension.matchers.MatchPlan;
 import com.worldpay.gateway.tokens.wiremock.extension.matchers.SimpleMatcher;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPathFactory;
 import java.io.IOException;
-import java.util.List;
+import java.util.Collections;
 import java.util.Set;
+import java.util.function.Supplier;
 
-import static com.github.tomakehurst.wiremock.matching.MatchResult.aggregate;
 import static com.github.tomakehurst.wiremock.matching.MatchResult.noMatch;
 
 /**
@@ -31,52 +29,143 @@ import static com.github.tomakehurst.wiremock.matching.MatchResult.noMatch;
  * matchers, we also have to implement customer matching routines for everything
  * we want to match on, which currently includes the request method, url and
  * correlationId, as well as the request body as XML.
+ *
+ * <p>WireMock evaluates every stub's matcher for every request, so stubs are
+ * first checked against a {@link StubIndex} which cheaply rules out those with
+ * the wrong method, url or XML root element. Each stub's parameters are
+ * compiled once into a {@link MatchPlan}, which the matchers then work from,
+ * and which counts the stub's match attempts and matches.
+ *
+ * <p>Requests can also be traced (see {@link MatchTraces}), in which case each
+ * stub's checks are run and timed one at a time and recorded in a {@link MatchTrace}.
  */
 public class WpgRequestMatcher extends RequestMatcherExtension {
 
-    private static final Set<String> supportedParams =
-            ImmutableSet.of("method", "url", "headers", "xpath", "xmlLike", "xmlLikeFile");
+    // every live instance, so replaced stubs can be dropped from their indexes
+    private static final Set<WpgRequestMatcher> instances =
+            Collections.newSetFromMap(new MapMaker().weakKeys().makeMap());
+
     private final FileSource fileSource;
+    private final StubIndex stubIndex = new StubIndex();
 
     /**
-     * Creates an instance with a pre-configured {@link DocumentBuilderFactory} and
-     * {@link XPathFactory}.
+     * Creates an instance matching against the configured files root. Parsers
+     * are shared through {@link com.worldpay.gateway.tokens.wiremock.extension.xml.XmlParsers}.
      *
-     * @throws ParserConfigurationException when unable to instantiate a {@link DocumentBuilderFactory}
+     * @throws ParserConfigurationException when unable to configure a parser
      */
     public WpgRequestMatcher() throws ParserConfigurationException {
-        fileSource = WpgWireMockServerRunner.getOptions().filesRoot();
+        this(WpgWireMockServerRunner.getOptions().filesRoot());
+    }
+
+    /**
+     * @param fileSource the files root, under which xmlLikeFile documents are
+     *        found in {@code __files}
+     */
+    WpgRequestMatcher(FileSource fileSource) {
+        this.fileSource = fileSource;
+        instances.add(this);
+    }
+
+    /**
+     * Drops everything compiled and indexed for a stub which has been replaced
+     * or removed (see {@link StubFileWatcher}), leaving other stubs as they are.
+     *
+     * @param parameters the wpgMatcher parameters instance the old stub was served with
+     */
+    static void forget(Parameters parameters) {
+        MatchPlan.forget(parameters);
+        for (WpgRequestMatcher matcher : instances) {
+            matcher.stubIndex.remove(parameters);
+        }
     }
 
     @Override
     public MatchResult match(Request request, Parameters parameters) {
-        if (!supportedParams.containsAll(parameters.keySet())) {
+        MatchPlan plan = MatchPlan.of(parameters);
+        plan.recordAttempt();
+
+        MatchTrace trace = RequestContext.of(request).getTrace();
+        MatchResult result = trace == null
+                ? matchPlan(request, parameters, plan)
+                : matchTraced(request, parameters, plan, trace);
+        if (result.isExactMatch()) {
+            plan.recordMatch();
+        }
+
+        return result;
+    }
+
+    private MatchResult matchPlan(Request request, Parameters parameters, MatchPlan plan) {
+        // rejects stubs with unsupported parameters, as well as any whose
+        // method, url or root element rule out this request
+        if (!stubIndex.isCandidate(request, parameters)) {
             return noMatch();
         }
 
-        SimpleMatcher simpleMatcher = new SimpleMatcher(request, parameters);
-        List<MatchResult> results = Lists.newArrayList(
-                simpleMatcher.matchAgainstMethod(),
-                simpleMatcher.matchAgainstUrl(),
-                simpleMatcher.matchAgainstHeaders()
-        );
+        if (!new SimpleMatcher(request, plan).match().isExactMatch()) {
+            return noMatch();
+        }
 
         // only run the Document matchers if every other matcher has returned
-        // a successful match. avoids building a DOM if it's not necessary.
-        if (aggregate(results).isExactMatch()) {
-            try {
-                DocumentMatcher documentMatcher = new DocumentMatcher(fileSource, request, parameters);
-                results.addAll(Lists.newArrayList(
-                        documentMatcher.matchAgainstXpath(),
-                        documentMatcher.matchAgainstXmlLike(),
-                        documentMatcher.matchAgainstXmlLikeFile()
-                ));
-            } catch (ParserConfigurationException | SAXException | IOException e) {
-                results.add(noMatch());
-            }
+        // a successful match. avoids reading the body if it's not necessary.
+        try {
+            return new DocumentMatcher(fileSource, request, plan).match();
+        } catch (SAXException | IOException e) {
+            return noMatch();
+        }
+    }
+
+    /**
+     * Matches a traced request. The checks are the same as for
+     * {@link #matchPlan(Request, Parameters, MatchPlan)}, but every stub is put
+     * through them, one parameter at a time, whether or not the index rules it
+     * out, so the trace shows which parameter rejected it.
+     */
+    private MatchResult matchTraced(Request request, Parameters parameters, MatchPlan plan, MatchTrace trace) {
+        long start = System.nanoTime();
+        MatchTrace.StubTrace stub = trace.startStub(MatchPlan.describe(parameters),
+                stubIndex.isCandidate(request, parameters));
+
+        boolean matched = runStages(request, plan, stub);
+        stub.finish(matched, System.nanoTime() - start);
+
+        return MatchResult.of(matched);
+    }
+
+    private boolean runStages(Request request, MatchPlan plan, MatchTrace.StubTrace stub) {
+        if (!stub.recordStage("parameters", 0, plan.isValid())) {
+            return false;
+        }
+
+        SimpleMatcher simpleMatcher = new SimpleMatcher(request, plan);
+        if ((plan.getMethod() != null && !stage(stub, "method", simpleMatcher::matchAgainstMethod))
+                || (plan.getUrl() != null && !stage(stub, "url", simpleMatcher::matchAgainstUrl))
+                || (!plan.getHeaders().isEmpty() && !stage(stub, "headers", simpleMatcher::matchAgainstHeaders))) {
+            return false;
         }
 
-        return aggregate(results);
+        // reads the body, either streaming it for the xpath parameter or
+        // parsing it, as the untraced matcher does
+        long start = System.nanoTime();
+        DocumentMatcher documentMatcher;
+        try {
+            documentMatcher = new DocumentMatcher(fileSource, request, plan);
+        } catch (SAXException | IOException e) {
+            return stub.recordStage("body", System.nanoTime() - start, false);
+        }
+        stub.recordStage("body", System.nanoTime() - start, true);
+
+        return (plan.getXpaths() == null || stage(stub, "xpath", documentMatcher::matchAgainstXpath))
+                && (plan.getXmlLike() == null || stage(stub, "xmlLike", documentMatcher::matchAgainstXmlLike))
+                && (plan.getXmlLikeFile() == null
+                        || stage(stub, "xmlLikeFile", documentMatcher::matchAgainstXmlLikeFile));
+    }
+
+    private static boolean stage(MatchTrace.StubTrace stub, String name, Supplier<MatchResult> check) {
+        long start = System.nanoTime();
+        boolean passed = check.get().isExactMatch();
+        return stub.recordStage(name, System.nanoTime() - start, passed);
     }
 
     @Override
@@ -14,13 +14,19 @@ import com.github.tomakehurst.wiremock.http.HttpHeader;
 import com.github.tomakehurst.wiremock.http.HttpHeaders;
 import com.github.tomakehurst.wiremock.http.Request;
 import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.LatencyHistogram;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.Metrics;
 
 import java.io.IOException;
+import java.net.URI;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static com.github.tomakehurst.wiremock.common.Exceptions.throwUnchecked;
@@ -30,15 +36,43 @@ import static com.github.tomakehurst.wiremock.common.Exceptions.throwUnchecked;
  * is also parsed as XML and made available to the templater as {@code request.xmlBody}.
  *
  * <p>Also provides some other WPG-specific template functions. See {@link HelperSource}
+ *
+ * <p>Compiled templates are cached (see {@link TemplateCache}), so a response
+ * is only compiled the first time it is served.
+ *
+ * <p>Responses which contain no templates at all are served as they are,
+ * without templating (see {@link StaticResponses}). A stub can also turn
+ * templating off for its response, even though the transformer applies
+ * globally, with the transformer parameter {@code "templated": false}.
+ *
+ * <p>Template rendering is timed, and the template cache reported, in the
+ * shared {@link Metrics}. The response to a traced request is given the id of
+ * its trace (see {@link MatchTraces}).
  */
 public class WpgResponseTemplateTransformer extends ResponseDefinitionTransformer {
 
+    public static final String TEMPLATED_PARAMETER = "templated";
+
+    private static final LatencyHistogram renderTime = Metrics.shared()
+            .histogram("wpg_template_render_duration_seconds", "Time taken to render a response template.");
+
+    // every live instance, so changed body files can be dropped from their caches
+    private static final Set<WpgResponseTemplateTransformer> instances =
+            Collections.newSetFromMap(new MapMaker().weakKeys().makeMap());
+
     private final boolean global;
 
-    private final Handlebars handlebars;
+    private final TemplateCache templates;
+
+    private final StaticResponses staticResponses = new StaticResponses();
 
+    /**
+     * Creates an instance with the default helpers. Every such instance shares
+     * its compiled templates, so templates compiled at startup by
+     * {@link StubWarmUp} are ready for the instance WireMock creates.
+     */
     public WpgResponseTemplateTransformer() {
-        this(Collections.emptyMap());
+        this(DefaultTemplates.templates);
     }
 
     public WpgResponseTemplateTransformer(String helperName, Helper helper) {
@@ -47,14 +81,47 @@ public class WpgResponseTemplateTransformer extends ResponseDefinitionTransforme
 
     /**
      * Creates an instance of this class which uses the configured helpers, as well
-     * as some defaults.
+     * as some defaults, and compiles templates into a cache of its own.
      *
      * @param helpers a map of Handlebars helpers to include with this transformer
      */
-    @SuppressWarnings("unchecked")
-    private WpgResponseTemplateTransformer(Map<String, Helper> helpers) {
+    WpgResponseTemplateTransformer(Map<String, Helper> helpers) {
+        this(new TemplateCache(createHandlebars(helpers, new HelperSource())));
+    }
+
+    private WpgResponseTemplateTransformer(TemplateCache templates) {
         this.global = true;
-        handlebars = new Handlebars();
+        this.templates = templates;
+        Metrics.shared().registerCache("templates", templates::stats);
+        instances.add(this);
+    }
+
+    /**
+     * Drops the compiled templates and static contents held for a body file
+     * which has changed (see {@link StubFileWatcher}), leaving other files'
+     * as they are.
+     *
+     * @param uri the file's URI
+     */
+    static void invalidateFile(URI uri) {
+        for (WpgResponseTemplateTransformer transformer : instances) {
+            transformer.templates.invalidate(uri);
+            transformer.staticResponses.invalidate(uri);
+        }
+    }
+
+    /**
+     * Starts the random digits of the default helpers again from their seed,
+     * if they have one, so that the digits requests see don't depend on how
+     * many were drawn while warming up.
+     */
+    static void resetRandomDigits() {
+        DefaultTemplates.helperSource.resetRandomDigits();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Handlebars createHandlebars(Map<String, Helper> helpers, HelperSource helperSource) {
+        Handlebars handlebars = new Handlebars();
 
         for (StringHelpers helper: StringHelpers.values()) {
             handlebars.registerHelper(helper.name(), helper);
@@ -64,7 +131,16 @@ public class WpgResponseTemplateTransformer extends ResponseDefinitionTransforme
             handlebars.registerHelper(entry.getKey(), entry.getValue());
         }
 
-        handlebars.registerHelpers(new HelperSource());
+        handlebars.registerHelpers(helperSource);
+
+        return handlebars;
+    }
+
+    /**
+     * @return hit, miss and eviction counts for the compiled template cache
+     */
+    public CacheStats getTemplateCacheStats() {
+        return templates.stats();
     }
 
     @Override
@@ -80,6 +156,29 @@ public class WpgResponseTemplateTransformer extends ResponseDefinitionTransforme
     @Override
     public ResponseDefinition transform(Request request, ResponseDefinition responseDefinition,
                                         FileSource files, Parameters parameters) {
+        ResponseDefinition transformed = transformResponse(request, responseDefinition, files, parameters);
+
+        MatchTrace trace = MatchTraces.shared().of(request);
+        if (trace != null) {
+            return ResponseDefinitionBuilder.like(transformed)
+                    .withHeader(MatchTraces.TRACE_ID_HEADER, trace.getId())
+                    .build();
+        }
+
+        return transformed;
+    }
+
+    private ResponseDefinition transformResponse(Request request, ResponseDefinition responseDefinition,
+                                                 FileSource files, Parameters parameters) {
+        if (parameters != null && Boolean.FALSE.equals(parameters.get(TEMPLATED_PARAMETER))) {
+            return responseDefinition;
+        }
+
+        ResponseDefinition staticResponse = staticResponses.staticFormOf(responseDefinition, files);
+        if (staticResponse != null) {
+            return staticResponse;
+        }
+
         ResponseDefinitionBuilder newResponseDefBuilder = ResponseDefinitionBuilder.like(responseDefinition);
         final ImmutableMap<String, XmlRequestTemplateModel> model =
                 ImmutableMap.of("request", XmlRequestTemplateModel.from(request));
@@ -89,7 +188,7 @@ public class WpgResponseTemplateTransformer extends ResponseDefinitionTransforme
             applyTemplateResponseBody(newResponseDefBuilder, model, bodyTemplate);
         } else if (responseDefinition.specifiesBodyFile()) {
             TextFile file = files.getTextFileNamed(responseDefinition.getBodyFileName());
-            Template bodyTemplate = uncheckedCompileTemplate(file.readContentsAsString());
+            Template bodyTemplate = uncheckedCompileTemplateFile(file);
             applyTemplateResponseBody(newResponseDefBuilder, model, bodyTemplate);
         }
 
@@ -115,6 +214,41 @@ public class WpgResponseTemplateTransformer extends ResponseDefinitionTransforme
         return newResponseDefBuilder.build();
     }
 
+    /**
+     * Compiles every template in a response, as {@link #transform} would, without
+     * rendering any of them.
+     *
+     * @param responseDefinition the stub's response
+     * @param files the files root, as given to {@link #transform}
+     * @param parameters the stub's transformer parameters, which may be null
+     * @return true if the response is templated, false if it is served as it is
+     * @throws RuntimeException if a template can't be read or compiled
+     */
+    boolean precompile(ResponseDefinition responseDefinition, FileSource files, Parameters parameters) {
+        if ((parameters != null && Boolean.FALSE.equals(parameters.get(TEMPLATED_PARAMETER)))
+                || staticResponses.staticFormOf(responseDefinition, files) != null) {
+            return false;
+        }
+
+        if (responseDefinition.specifiesBodyContent()) {
+            uncheckedCompileTemplate(responseDefinition.getBody());
+        } else if (responseDefinition.specifiesBodyFile()) {
+            uncheckedCompileTemplateFile(files.getTextFileNamed(responseDefinition.getBodyFileName()));
+        }
+
+        if (responseDefinition.getHeaders() != null) {
+            for (HttpHeader header : responseDefinition.getHeaders().all()) {
+                header.values().forEach(this::uncheckedCompileTemplate);
+            }
+        }
+
+        if (responseDefinition.getProxyBaseUrl() != null) {
+            uncheckedCompileTemplate(responseDefinition.getProxyBaseUrl());
+        }
+
+        return true;
+    }
+
     private void applyTemplateResponseBody(ResponseDefinitionBuilder newResponseDefBuilder, ImmutableMap<String,
             XmlRequestTemplateModel> model, Template bodyTemplate) {
         String newBody = uncheckedApplyTemplate(bodyTemplate, model);
@@ -122,19 +256,38 @@ public class WpgResponseTemplateTransformer extends ResponseDefinitionTransforme
     }
 
     private String uncheckedApplyTemplate(Template template, Object context) {
+        long start = System.nanoTime();
         try {
             return template.apply(context);
         } catch (IOException e) {
             return throwUnchecked(e, String.class);
+        } finally {
+            renderTime.recordSince(start);
         }
     }
 
     private Template uncheckedCompileTemplate(String content) {
         try {
-            return handlebars.compileInline(content);
+            return templates.compileInline(content);
+        } catch (IOException e) {
+            return throwUnchecked(e, Template.class);
+        }
+    }
+
+    private Template uncheckedCompileTemplateFile(TextFile file) {
+        try {
+            return templates.compileFile(file);
         } catch (IOException e) {
             return throwUnchecked(e, Template.class);
         }
     }
-}
 
+    /**
+     * The compiled templates of every instance created with the default helpers.
+     */
+    private static final class DefaultTemplates {
+        private static final HelperSource helperSource = new HelperSource();
+        private static final TemplateCache templates =
+                new TemplateCache(createHandlebars(Collections.emptyMap(), helperSource));
+    }
+}
@@ -0,0 +1,98 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.admin.AdminTask;
+import com.github.tomakehurst.wiremock.admin.Router;
+import com.github.tomakehurst.wiremock.admin.model.PathParams;
+import com.github.tomakehurst.wiremock.core.Admin;
+import com.github.tomakehurst.wiremock.extension.AdminApiExtension;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Serves the {@link MatchTrace}s kept by {@link MatchTraces} from the admin API,
+ * as JSON, and turns tracing of every request on and off:
+ *
+ * <ul>
+ *     <li>{@code GET /__admin/wpg/traces} lists the recent traces, most recent first</li>
+ *     <li>{@code GET /__admin/wpg/traces/{id}} gets a single trace</li>
+ *     <li>{@code DELETE /__admin/wpg/traces} discards every trace</li>
+ *     <li>{@code POST /__admin/wpg/traces/enable} traces every request</li>
+ *     <li>{@code POST /__admin/wpg/traces/disable} traces only requests with an
+ *     {@value MatchTraces#TRACE_HEADER} header</li>
+ * </ul>
+ */
+public class WpgTraceEndpoint implements AdminApiExtension {
+
+    public static final String PATH = "/wpg/traces";
+
+    private final MatchTraces traces;
+
+    public WpgTraceEndpoint() {
+        this(MatchTraces.shared());
+    }
+
+    WpgTraceEndpoint(MatchTraces traces) {
+        this.traces = traces;
+    }
+
+    @Override
+    public void contributeAdminApiRoutes(Router router) {
+        router.add(RequestMethod.GET, PATH, new ListTracesTask());
+        router.add(RequestMethod.GET, PATH + "/{id}", new GetTraceTask());
+        router.add(RequestMethod.DELETE, PATH, new ClearTracesTask());
+        router.add(RequestMethod.POST, PATH + "/enable", new EnableTask());
+        router.add(RequestMethod.POST, PATH + "/disable", new DisableTask());
+    }
+
+    @Override
+    public String getName() {
+        return "wpg-traces";
+    }
+
+    private final class ListTracesTask implements AdminTask {
+        @Override
+        public ResponseDefinition execute(Admin admin, Request request, PathParams pathParams) {
+            return ResponseDefinition.okForJson(ImmutableMap.<String, Object>of(
+                    "enabled", traces.isEnabled(),
+                    "traces", traces.recent()));
+        }
+    }
+
+    private final class GetTraceTask implements AdminTask {
+        @Override
+        public ResponseDefinition execute(Admin admin, Request request, PathParams pathParams) {
+            MatchTrace trace = traces.get(pathParams.get("id"));
+            return trace != null ? ResponseDefinition.okForJson(trace) : ResponseDefinition.notFound();
+        }
+    }
+
+    private final class ClearTracesTask implements AdminTask {
+        @Override
+        public ResponseDefinition execute(Admin admin, Request request, PathParams pathParams) {
+            traces.clear();
+            return ResponseDefinition.ok();
+        }
+    }
+
+    // WireMock finds a task's route by its class, so each route needs a class of its own
+    private final class EnableTask implements AdminTask {
+        @Override
+        public ResponseDefinition execute(Admin admin, Request request, PathParams pathParams) {
+            return setEnabled(true);
+        }
+    }
+
+    private final class DisableTask implements AdminTask {
+        @Override
+        public ResponseDefinition execute(Admin admin, Request request, PathParams pathParams) {
+            return setEnabled(false);
+        }
+    }
+
+    private ResponseDefinition setEnabled(boolean enabled) {
+        traces.setEnabled(enabled);
+        return ResponseDefinition.okForJson(ImmutableMap.of("enabled", enabled));
+    }
+}
@@ -0,0 +1,74 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.jknack.handlebars.Handlebars;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Renders dates in WPG XML format, e.g.:
+ * {@literal <date dayOfMonth="26" month="06" year="2017" hour="09" minute="56" second="38"/>}
+ *
+ * <p>The format has one-second resolution, so the rendered date for each
+ * offset in days is kept and reused until the clock moves on to the next
+ * second. Offsets are counted in calendar days in the clock's time zone, so
+ * the time of day is unchanged across daylight saving changes.
+ */
+final class XmlDates {
+
+    static final int MAXIMUM_CACHED_OFFSETS = 100;
+
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern(
+            "'<date dayOfMonth=\"'dd'\" month=\"'MM'\" year=\"'yyyy'\" "
+                    + "hour=\"'HH'\" minute=\"'mm'\" second=\"'ss'\"/>'");
+
+    private final Clock clock;
+    private final ConcurrentMap<Integer, Rendered> rendered = new ConcurrentHashMap<>();
+
+    /**
+     * @param clock the source of the current time and time zone
+     */
+    XmlDates(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @param daysFromNow number of days to add to the current date
+     * @return the date in WPG XML format
+     */
+    Handlebars.SafeString daysFromNow(int daysFromNow) {
+        long second = Math.floorDiv(clock.millis(), 1000);
+
+        Rendered cached = rendered.get(daysFromNow);
+        if (cached != null && cached.second == second) {
+            return cached.value;
+        }
+
+        Rendered fresh = new Rendered(second, render(second, daysFromNow));
+        if (cached != null || rendered.size() < MAXIMUM_CACHED_OFFSETS) {
+            rendered.put(daysFromNow, fresh);
+        }
+
+        return fresh.value;
+    }
+
+    private Handlebars.SafeString render(long second, int daysFromNow) {
+        ZonedDateTime date = ZonedDateTime.ofInstant(Instant.ofEpochSecond(second), clock.getZone())
+                .plusDays(daysFromNow);
+        return new Handlebars.SafeString(FORMAT.format(date));
+    }
+
+    private static final class Rendered {
+        private final long second;
+        private final Handlebars.SafeString value;
+
+        private Rendered(long second, Handlebars.SafeString value) {
+            this.second = second;
+            this.value = value;
+        }
+    }
+}
@@ -1,89 +1,123 @@
 package com.worldpay.gateway.tokens.wiremock.extension;
 
+import com.github.tomakehurst.wiremock.common.Urls;
 import com.github.tomakehurst.wiremock.extension.responsetemplating.ListOrSingle;
 import com.github.tomakehurst.wiremock.extension.responsetemplating.RequestTemplateModel;
 import com.github.tomakehurst.wiremock.extension.responsetemplating.UrlPath;
+import com.github.tomakehurst.wiremock.http.Cookie;
+import com.github.tomakehurst.wiremock.http.MultiValue;
 import com.github.tomakehurst.wiremock.http.Request;
-import org.apache.commons.io.IOUtils;
+import com.google.common.collect.ImmutableMap;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.Charset;
+import java.net.URI;
 import java.util.Map;
 
 /**
- * Decorates a {@link RequestTemplateModel} with a view of the request
- * body parsed as XML.
+ * A view of a request for response templates: the same fields as
+ * {@link RequestTemplateModel}, plus the request body parsed as XML.
  *
- * <p>If the request body can't be parsed as XML, xmlBody will be null.
+ * <p>Each field is worked out the first time a template reads it, and
+ * remembered after that, so a template which never refers to the request
+ * costs nothing and one which only reads the url doesn't parse the body.
+ * A model is used by one transformation, on one thread.
+ *
+ * <p>If the request body can't be parsed as XML, xmlBody will be null. The
+ * parsed body is shared with {@link WpgRequestMatcher} through {@link RequestContext},
+ * so a request which has already been matched is not parsed again.
  */
 class XmlRequestTemplateModel {
-    private final RequestTemplateModel requestTemplateModel;
-    private final Document xmlBody;
+    private final Request request;
+
+    private UrlPath path;
+    private Map<String, ListOrSingle<String>> query;
+    private Map<String, ListOrSingle<String>> headers;
+    private Map<String, ListOrSingle<String>> cookies;
+    private String body;
+    private Document xmlBody;
+    private boolean xmlBodyParsed;
 
-    private XmlRequestTemplateModel(RequestTemplateModel requestTemplateModel, Document xmlBody) {
-        this.requestTemplateModel = requestTemplateModel;
-        this.xmlBody = xmlBody;
+    private XmlRequestTemplateModel(Request request) {
+        this.request = request;
     }
 
     /**
      * Creates a model of the request, including all fields from {@link RequestTemplateModel}
-     * as well as the request body parsed as XML.
+     * as well as the request body parsed as XML. Nothing is read from the
+     * request until the model is.
      *
      * @param request the request body
      * @return a model of the request body as described above
      */
     static XmlRequestTemplateModel from(final Request request) {
-        RequestTemplateModel requestTemplateModel = RequestTemplateModel.from(request);
-
-        Document xmlBody = null;
-        if (requestTemplateModel.getBody() != null) {
-            try {
-                DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-                dbf.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-                DocumentBuilder builder = dbf.newDocumentBuilder();
-
-                InputStream inputStream =
-                        IOUtils.toInputStream(requestTemplateModel.getBody(), Charset.defaultCharset());
-                xmlBody = builder.parse(inputStream);
-            } catch (ParserConfigurationException | SAXException | IOException e) {
-                // just don't have an XML body
-            }
-        }
-
-        return new XmlRequestTemplateModel(requestTemplateModel, xmlBody);
+        return new XmlRequestTemplateModel(request);
     }
 
     public String getUrl() {
-        return requestTemplateModel.getUrl();
+        return request.getUrl();
     }
 
     public UrlPath getPath() {
-        return requestTemplateModel.getPath();
+        if (path == null) {
+            path = new UrlPath(request.getUrl());
+        }
+        return path;
     }
 
     public Map<String, ListOrSingle<String>> getQuery() {
-        return requestTemplateModel.getQuery();
+        if (query == null) {
+            ImmutableMap.Builder<String, ListOrSingle<String>> builder = ImmutableMap.builder();
+            Urls.splitQuery(URI.create(request.getUrl()))
+                    .forEach((key, parameter) -> builder.put(key, toListOrSingle(parameter)));
+            query = builder.build();
+        }
+        return query;
     }
 
     public Map<String, ListOrSingle<String>> getHeaders() {
-        return requestTemplateModel.getHeaders();
+        if (headers == null) {
+            ImmutableMap.Builder<String, ListOrSingle<String>> builder = ImmutableMap.builder();
+            for (String key : request.getAllHeaderKeys()) {
+                builder.put(key, toListOrSingle(request.header(key)));
+            }
+            headers = builder.build();
+        }
+        return headers;
     }
 
     public Map<String, ListOrSingle<String>> getCookies() {
-        return requestTemplateModel.getCookies();
+        if (cookies == null) {
+            ImmutableMap.Builder<String, ListOrSingle<String>> builder = ImmutableMap.builder();
+            for (Map.Entry<String, Cookie> cookie : request.getCookies().entrySet()) {
+                builder.put(cookie.getKey(), ListOrSingle.of(cookie.getValue().getValue()));
+            }
+            cookies = builder.build();
+        }
+        return cookies;
     }
 
     public String getBody() {
-        return requestTemplateModel.getBody();
+        if (body == null) {
+            body = request.getBodyAsString();
+        }
+        return body;
     }
 
     public Document getXmlBody() {
+        if (!xmlBodyParsed) {
+            xmlBodyParsed = true;
+            try {
+                xmlBody = RequestContext.of(request).getXmlBody();
+            } catch (SAXException | IOException e) {
+                // just don't have an XML body
+            }
+        }
         return xmlBody;
     }
+
+    private static ListOrSingle<String> toListOrSingle(MultiValue value) {
+        return ListOrSingle.of(value.values());
+    }
 }
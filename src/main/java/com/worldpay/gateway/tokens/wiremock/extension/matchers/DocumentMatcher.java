@@ -5,137 +5,272 @@ import com.github.tomakehurst.wiremock.common.TextFile;
 import com.github.tomakehurst.wiremock.extension.Parameters;
 import com.github.tomakehurst.wiremock.http.Request;
 import com.github.tomakehurst.wiremock.matching.MatchResult;
-import org.apache.commons.io.IOUtils;
+import com.worldpay.gateway.tokens.wiremock.extension.RequestContext;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.LatencyHistogram;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.Metrics;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.ReferenceDocuments;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.ReferenceDocuments.ReferenceDocument;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.XPathCache.CompiledXPath;
 import org.apache.commons.lang3.StringUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.Charset;
-import java.util.List;
 
 import static com.github.tomakehurst.wiremock.core.WireMockApp.FILES_ROOT;
-import static com.github.tomakehurst.wiremock.matching.MatchResult.aggregate;
 import static com.github.tomakehurst.wiremock.matching.MatchResult.exactMatch;
 import static com.github.tomakehurst.wiremock.matching.MatchResult.noMatch;
-import static java.util.stream.Collectors.toList;
 import static org.w3c.dom.Node.ELEMENT_NODE;
 
+/**
+ * Matches the request body against a stub's {@code xpath}, {@code xmlLike} and
+ * {@code xmlLikeFile} parameters.
+ *
+ * <p>When a stub's only document parameters are XPath expressions which a
+ * {@link com.worldpay.gateway.tokens.wiremock.extension.xml.StreamingXPathEvaluator}
+ * can answer, they are evaluated by streaming over the body and no DOM is built.
+ * Otherwise the body is parsed into a DOM, which fails for a body which isn't
+ * well-formed XML. The exception is a body whose root element differs from
+ * that of a reference document, which can't match, so isn't parsed at all.
+ *
+ * <p>{@link #match()} runs every check, cheapest first, stopping at the first
+ * which fails.
+ *
+ * <p>Each XPath expression evaluated against the DOM is timed in the shared
+ * {@link Metrics}. Streamed expressions are timed by {@link RequestContext},
+ * one sample per pass over the body.
+ */
 public class DocumentMatcher {
-    private final DocumentBuilderFactory documentBuilderFactory;
-    private final XPathFactory xpathFactory;
+    private static final LatencyHistogram domXpathTime = Metrics.shared()
+            .histogram("wpg_xpath_evaluation_duration_seconds", "Time taken to evaluate XPath expressions.",
+                    "mode", "dom");
 
-    private final Document xmlBody;
-    private final Parameters parameters;
+    private final ReferenceDocuments referenceDocuments = ReferenceDocuments.shared();
+
+    private final RequestContext requestContext;
+    private final boolean[] streamedXpathResults;
+    private final MatchPlan plan;
+    private final boolean referenceRootsDiffer;
     private FileSource fileSource;
 
+    private ReferenceDocument xmlLikeFile;
+
+    private boolean xmlBodyLoaded;
+    private Document xmlBody;
+
     public DocumentMatcher(FileSource fileSource, Request request, Parameters parameters)
-            throws ParserConfigurationException, IOException, SAXException {
-        documentBuilderFactory = DocumentBuilderFactory.newInstance();
-        documentBuilderFactory
-                .setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-        xpathFactory = XPathFactory.newInstance();
+            throws IOException, SAXException {
+        this(fileSource, request, MatchPlan.of(parameters));
+    }
 
+    public DocumentMatcher(FileSource fileSource, Request request, MatchPlan plan)
+            throws IOException, SAXException {
         this.fileSource = fileSource;
-        this.parameters = parameters;
-        this.xmlBody = parseAsXml(request.getBodyAsString());
+        this.plan = plan;
+        this.requestContext = RequestContext.of(request);
+        this.streamedXpathResults = streamXpaths();
+        this.referenceRootsDiffer = referenceRootsDiffer();
+
+        boolean needsDocument = streamedXpathResults == null || plan.hasReferenceDocument();
+        if (needsDocument && !referenceRootsDiffer) {
+            this.xmlBody = requestContext.getXmlBody();
+            this.xmlBodyLoaded = true;
+        }
+    }
+
+    /**
+     * Runs every document check in order of cost: root element names, then
+     * structural fingerprints, then XPath expressions, then the full structural
+     * comparison with each reference document.
+     *
+     * @return an exact match if every check passes, otherwise no match
+     */
+    public MatchResult match() {
+        if (referenceRootsDiffer) {
+            return noMatch();
+        }
+
+        if (plan.getXmlLike() != null && !fingerprintMatches(plan.getXmlLike())) {
+            return noMatch();
+        }
+        if (plan.getXmlLikeFile() != null && !fingerprintMatches(getXmlLikeFile())) {
+            return noMatch();
+        }
+
+        if (!matchAgainstXpath().isExactMatch()) {
+            return noMatch();
+        }
+
+        return MatchResult.of(
+                (plan.getXmlLike() == null || structureMatches(plan.getXmlLike()))
+                        && (plan.getXmlLikeFile() == null || structureMatches(getXmlLikeFile())));
     }
 
-    @SuppressWarnings("unchecked")
     public MatchResult matchAgainstXpath() {
-        if (!parameters.containsKey("xpath")) {
+        if (plan.getXpaths() == null) {
             return exactMatch();
         }
 
-        if (xmlBody != null) {
-            XPath xpath = xpathFactory.newXPath();
+        if (streamedXpathResults != null) {
+            for (boolean result : streamedXpathResults) {
+                if (!result) {
+                    return noMatch();
+                }
+            }
+            return exactMatch();
+        }
+
+        Document xmlBody = getXmlBody();
+        if (xmlBody == null) {
+            return noMatch();
+        }
 
-            return aggregate(
-                    ((List<String>) parameters.get("xpath")).stream()
-                            .map(xpathExpr -> matchAgainstSingleXpath(xpath, xpathExpr, xmlBody))
-                            .collect(toList()));
+        for (CompiledXPath xpath : plan.getXpaths()) {
+            if (!matchAgainstSingleXpath(xpath, xmlBody)) {
+                return noMatch();
+            }
         }
 
-        return noMatch();
+        return exactMatch();
     }
 
     public MatchResult matchAgainstXmlLike() {
-        if (!parameters.containsKey("xmlLike")) {
+        if (plan.getXmlLike() == null) {
             return exactMatch();
         }
 
-        return matchAgainstXmlLikeInternal(parameters.getString("xmlLike"));
+        return matchAgainstXmlLikeInternal(plan.getXmlLike());
     }
 
     public MatchResult matchAgainstXmlLikeFile() {
-        if (!parameters.containsKey("xmlLikeFile")) {
+        if (plan.getXmlLikeFile() == null) {
             return exactMatch();
         }
 
-        FileSource filesRoot = fileSource.child(FILES_ROOT);
-        TextFile file = filesRoot.getTextFileNamed(parameters.getString("xmlLikeFile"));
+        return matchAgainstXmlLikeInternal(getXmlLikeFile());
+    }
+
+    /**
+     * Evaluates the xpath parameters by streaming, if there are any and they can
+     * all be evaluated that way and nothing else needs the DOM.
+     *
+     * @return the result for each expression, or null if they must be
+     *         evaluated against the DOM
+     */
+    private boolean[] streamXpaths() {
+        if (plan.getSimpleXpaths() == null || plan.hasReferenceDocument()) {
+            return null;
+        }
 
-        return matchAgainstXmlLikeInternal(file.readContentsAsString());
+        return requestContext.evaluateStreaming(plan.getSimpleXpaths());
     }
 
-    private MatchResult matchAgainstXmlLikeInternal(String xmlLikeStr) {
-        try {
-            Document xmlLike = parseAsXml(xmlLikeStr);
+    /**
+     * Compares the body's root element name, which doesn't need a DOM, with
+     * each reference document's.
+     *
+     * @return true if a reference document is invalid or has a different root
+     *         element, in which case the stub can't match
+     */
+    private boolean referenceRootsDiffer() {
+        if (!plan.hasReferenceDocument()) {
+            return false;
+        }
 
-            return MatchResult.of(xmlStructureMatch(xmlBody, xmlLike));
-        } catch (ParserConfigurationException | IOException | SAXException e) {
-            return noMatch();
+        String root = requestContext.getRootElementName();
+        return (plan.getXmlLike() != null && !hasRoot(plan.getXmlLike(), root))
+                || (plan.getXmlLikeFile() != null && !hasRoot(getXmlLikeFile(), root));
+    }
+
+    private static boolean hasRoot(ReferenceDocument reference, String root) {
+        return reference.isValid() && reference.getDocument().getDocumentElement().getNodeName().equals(root);
+    }
+
+    private ReferenceDocument getXmlLikeFile() {
+        if (xmlLikeFile == null) {
+            FileSource filesRoot = fileSource.child(FILES_ROOT);
+            TextFile file = filesRoot.getTextFileNamed(plan.getXmlLikeFile());
+            xmlLikeFile = referenceDocuments.file(file);
         }
+
+        return xmlLikeFile;
     }
 
-    private Document parseAsXml(String text) throws ParserConfigurationException, IOException, SAXException {
-        if (text != null) {
-            DocumentBuilder builder = documentBuilderFactory.newDocumentBuilder();
-            InputStream inputStream = IOUtils.toInputStream(text, Charset.defaultCharset());
-            return builder.parse(inputStream);
+    /**
+     * Gets the parsed body, if the constructor didn't need to parse it.
+     *
+     * @return the parsed body, or null if there's no body or it isn't well-formed
+     */
+    private Document getXmlBody() {
+        if (!xmlBodyLoaded) {
+            try {
+                xmlBody = requestContext.getXmlBody();
+            } catch (SAXException | IOException e) {
+                xmlBody = null;
+            }
+            xmlBodyLoaded = true;
         }
 
-        return null;
+        return xmlBody;
     }
 
-    private MatchResult matchAgainstSingleXpath(XPath xpath, String xpathExpr, Document xmlBody) {
-        try {
-            NodeList nodeList = (NodeList)xpath.evaluate(xpathExpr, xmlBody, XPathConstants.NODESET);
+    private MatchResult matchAgainstXmlLikeInternal(ReferenceDocument xmlLike) {
+        return MatchResult.of(fingerprintMatches(xmlLike) && structureMatches(xmlLike));
+    }
+
+    /**
+     * Differing fingerprints prove the structures differ. Equal ones must be
+     * confirmed with {@link #structureMatches(ReferenceDocument)} in case of a
+     * hash collision.
+     */
+    private boolean fingerprintMatches(ReferenceDocument xmlLike) {
+        return getXmlBody() != null
+                && xmlLike.isValid()
+                && requestContext.getXmlBodyFingerprint() == xmlLike.getFingerprint();
+    }
+
+    private boolean structureMatches(ReferenceDocument xmlLike) {
+        return getXmlBody() != null && xmlLike.isValid() && xmlStructureMatch(getXmlBody(), xmlLike.getDocument());
+    }
+
+    private boolean matchAgainstSingleXpath(CompiledXPath xpath, Document xmlBody) {
+        if (!xpath.isValid()) {
+            return false;
+        }
 
-            return MatchResult.of(nodeList.getLength() > 0);
+        long start = System.nanoTime();
+        try {
+            return xpath.evaluateNodeSet(xmlBody).getLength() > 0;
         } catch (XPathExpressionException e) {
-            return noMatch();
+            return false;
+        } finally {
+            domXpathTime.recordSince(start);
         }
     }
 
     private boolean xmlStructureMatch(Node left, Node right) {
-        boolean matched =
-                StringUtils.equals(left.getNodeName(), right.getNodeName())
-                        && checkAttributes(left, right)
-                        && countElements(left.getFirstChild()) == countElements(right.getFirstChild());
+        if (!StringUtils.equals(left.getNodeName(), right.getNodeName())
+                || !checkAttributes(left, right)
+                || countElements(left.getFirstChild()) != countElements(right.getFirstChild())) {
+            return false;
+        }
 
         Node leftElement = getNextElement(left.getFirstChild());
         Node rightElement = getNextElement(right.getFirstChild());
 
         while (leftElement != null && rightElement != null) {
-            matched = matched && xmlStructureMatch(leftElement, rightElement);
+            if (!xmlStructureMatch(leftElement, rightElement)) {
+                return false;
+            }
 
             leftElement = getNextElement(leftElement.getNextSibling());
             rightElement = getNextElement(rightElement.getNextSibling());
         }
 
-        return matched;
+        return true;
     }
 
     private boolean checkAttributes(Node left, Node right) {
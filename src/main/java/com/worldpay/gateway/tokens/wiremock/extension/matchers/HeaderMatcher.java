@@ -0,0 +1,135 @@
+package com.worldpay.gateway.tokens.wiremock.extension.matchers;
+
+import com.github.tomakehurst.wiremock.http.HttpHeader;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Matches a header against the value given for it in a stub's {@code headers}
+ * parameter.
+ *
+ * <p>Values containing no regular expression metacharacters are compared as
+ * literals, ignoring case, without any regular expression at all. Other values
+ * are compiled once, with the same flags as WireMock's {@code RegexPattern},
+ * and must match a header value in full. A value which isn't a valid regular
+ * expression never matches.
+ *
+ * <p>Matchers are cached by value, so stubs sharing a header value share its
+ * compiled form.
+ */
+public abstract class HeaderMatcher {
+
+    static final long MAXIMUM_SIZE = 10_000;
+
+    private static final String METACHARACTERS = "\\.[]{}()*+?^$|";
+
+    private static final LoadingCache<String, HeaderMatcher> cache = CacheBuilder.newBuilder()
+            .maximumSize(MAXIMUM_SIZE)
+            .recordStats()
+            .build(new CacheLoader<String, HeaderMatcher>() {
+                @Override
+                public HeaderMatcher load(String value) {
+                    return compile(value);
+                }
+            });
+
+    private HeaderMatcher() {
+    }
+
+    /**
+     * Gets the matcher for a header value, compiling it on first use.
+     *
+     * @param value the value from the stub
+     * @return the matcher for that value
+     */
+    public static HeaderMatcher forValue(String value) {
+        return cache.getUnchecked(value);
+    }
+
+    /**
+     * @return hit, miss and eviction counts for the shared cache
+     */
+    public static CacheStats stats() {
+        return cache.stats();
+    }
+
+    static HeaderMatcher compile(String value) {
+        if (isLiteral(value)) {
+            return new Literal(value);
+        }
+
+        try {
+            return new Regex(Pattern.compile(value, Pattern.DOTALL));
+        } catch (PatternSyntaxException e) {
+            return new Invalid();
+        }
+    }
+
+    static boolean isLiteral(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (METACHARACTERS.indexOf(value.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param header the request header, which may be absent
+     * @return true if the header is present and any of its values match
+     */
+    public boolean matches(HttpHeader header) {
+        if (!header.isPresent()) {
+            return false;
+        }
+
+        for (String value : header.values()) {
+            if (value != null && matches(value)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    abstract boolean matches(String value);
+
+    private static final class Literal extends HeaderMatcher {
+        private final String expected;
+
+        private Literal(String expected) {
+            this.expected = expected;
+        }
+
+        @Override
+        boolean matches(String value) {
+            return expected.equalsIgnoreCase(value);
+        }
+    }
+
+    private static final class Regex extends HeaderMatcher {
+        private final Pattern pattern;
+
+        private Regex(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        boolean matches(String value) {
+            return pattern.matcher(value).matches();
+        }
+    }
+
+    private static final class Invalid extends HeaderMatcher {
+        @Override
+        boolean matches(String value) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.worldpay.gateway.tokens.wiremock.extension.matchers;
+
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.Counter;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.Metrics;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.ReferenceDocuments;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.ReferenceDocuments.ReferenceDocument;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.SimpleXPath;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.XPathCache;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.XPathCache.CompiledXPath;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A stub's wpgMatcher {@link Parameters}, validated and compiled into the form
+ * the matchers use: header matchers, compiled XPath expressions and the parsed
+ * inline {@code xmlLike} document.
+ *
+ * <p>Plans are compiled the first time a stub is matched and held against its
+ * {@link Parameters} by identity, using weak keys, so they are dropped along
+ * with the stub. WireMock doesn't modify a stub's parameters once it has been
+ * loaded, so a plan never needs recompiling, though the plan of a stub which
+ * has been replaced can be dropped early with {@link #forget(Parameters)}.
+ *
+ * <p>A stub with unsupported parameters, or parameters of the wrong type, gets
+ * an invalid plan, which never matches.
+ *
+ * <p>Plans count the requests they have been tried against and the requests
+ * they have matched. By default every plan adds to the same two counters, as a
+ * label per stub would give a series for each of thousands of stubs. With the
+ * system property {@value #PER_STUB_METRICS_PROPERTY}{@code =true}, set before
+ * the stubs are compiled, each plan counts under a label describing its stub
+ * instead (see {@link #describe(Parameters)}). Stubs with identical parameters
+ * then share their counts, as do all invalid plans, and a stub's series are
+ * dropped along with the last plan counting under them by
+ * {@link #forget(Parameters)}.
+ */
+public final class MatchPlan {
+
+    public static final Set<String> SUPPORTED_PARAMETERS =
+            ImmutableSet.of("method", "url", "headers", "xpath", "xmlLike", "xmlLikeFile");
+
+    public static final String PER_STUB_METRICS_PROPERTY = "wpg.metrics.perStub";
+
+    private static final Cache<Parameters, MatchPlan> plans = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    private static final String ATTEMPTS_METRIC = "wpg_stub_match_attempts_total";
+    private static final String ATTEMPTS_HELP = "Requests a stub has been tried against.";
+    private static final String MATCHES_METRIC = "wpg_stub_matches_total";
+    private static final String MATCHES_HELP = "Requests a stub has matched.";
+    private static final String STUB_LABEL = "stub";
+    private static final String INVALID_STUB = "invalid";
+
+    private static final MatchPlan INVALID = new MatchPlan();
+
+    private final boolean valid;
+    private final String method;
+    private final String url;
+    private final List<HeaderEntry> headers;
+    private final List<CompiledXPath> xpaths;
+    private final List<SimpleXPath> simpleXpaths;
+    private final ReferenceDocument xmlLike;
+    private final String xmlLikeFile;
+
+    private final String metricsLabel;
+    private final Counter attempts;
+    private final Counter matches;
+
+    private MatchPlan() {
+        valid = false;
+        method = null;
+        url = null;
+        headers = ImmutableList.of();
+        xpaths = null;
+        simpleXpaths = null;
+        xmlLike = null;
+        xmlLikeFile = null;
+        metricsLabel = perStubMetrics() ? INVALID_STUB : null;
+        attempts = stubCounter(ATTEMPTS_METRIC, ATTEMPTS_HELP, metricsLabel);
+        matches = stubCounter(MATCHES_METRIC, MATCHES_HELP, metricsLabel);
+    }
+
+    @SuppressWarnings("unchecked")
+    private MatchPlan(Parameters parameters) {
+        valid = true;
+        method = (String) parameters.get("method");
+        url = (String) parameters.get("url");
+        xmlLikeFile = (String) parameters.get("xmlLikeFile");
+
+        String xmlLikeSource = (String) parameters.get("xmlLike");
+        xmlLike = xmlLikeSource != null ? ReferenceDocuments.shared().inline(xmlLikeSource) : null;
+
+        ImmutableList.Builder<HeaderEntry> headers = ImmutableList.builder();
+        Map<String, String> headerParams = (Map<String, String>) parameters.get("headers");
+        if (headerParams != null) {
+            for (Map.Entry<String, String> header : headerParams.entrySet()) {
+                headers.add(new HeaderEntry(header.getKey(), HeaderMatcher.forValue(header.getValue())));
+            }
+        }
+        this.headers = headers.build();
+
+        List<String> xpathParams = (List<String>) parameters.get("xpath");
+        if (xpathParams != null) {
+            ImmutableList.Builder<CompiledXPath> xpaths = ImmutableList.builder();
+            ImmutableList.Builder<SimpleXPath> simpleXpaths = ImmutableList.builder();
+            boolean allSimple = true;
+            for (String expression : xpathParams) {
+                CompiledXPath xpath = XPathCache.shared().compile(expression);
+                xpaths.add(xpath);
+                if (xpath.getSimpleForm() != null) {
+                    simpleXpaths.add(xpath.getSimpleForm());
+                } else {
+                    allSimple = false;
+                }
+            }
+            this.xpaths = xpaths.build();
+            this.simpleXpaths = allSimple ? simpleXpaths.build() : null;
+        } else {
+            this.xpaths = null;
+            this.simpleXpaths = null;
+        }
+
+        metricsLabel = perStubMetrics() ? describe(parameters) : null;
+        attempts = stubCounter(ATTEMPTS_METRIC, ATTEMPTS_HELP, metricsLabel);
+        matches = stubCounter(MATCHES_METRIC, MATCHES_HELP, metricsLabel);
+    }
+
+    /**
+     * Gets the plan for a stub, compiling it on first use.
+     *
+     * @param parameters the stub's wpgMatcher parameters
+     * @return the stub's plan, which may be invalid
+     */
+    public static MatchPlan of(final Parameters parameters) {
+        try {
+            return plans.get(parameters, () -> compile(parameters));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Drops the plan compiled for a stub which has been replaced or removed,
+     * rather than waiting for WireMock to release its parameters, along with
+     * its per-stub metrics unless another plan still counts under them. Plans
+     * are dropped by identity, so the plan of a new stub with the same
+     * parameters, or of any other equal stub, is kept.
+     *
+     * @param parameters the parameters instance the old stub was served with
+     */
+    public static void forget(Parameters parameters) {
+        MatchPlan plan = plans.asMap().remove(parameters);
+        if (plan == null || plan.metricsLabel == null) {
+            return;
+        }
+
+        for (MatchPlan other : plans.asMap().values()) {
+            if (plan.metricsLabel.equals(other.metricsLabel)) {
+                return;
+            }
+        }
+        plan.removeMetrics();
+    }
+
+    /**
+     * @return true if {@value #PER_STUB_METRICS_PROPERTY} is set to {@code true}
+     */
+    public static boolean perStubMetrics() {
+        return "true".equalsIgnoreCase(System.getProperty(PER_STUB_METRICS_PROPERTY, "false").trim());
+    }
+
+    private static MatchPlan compile(Parameters parameters) {
+        if (!SUPPORTED_PARAMETERS.containsAll(parameters.keySet())) {
+            return INVALID;
+        }
+
+        try {
+            return new MatchPlan(parameters);
+        } catch (ClassCastException e) {
+            return INVALID;
+        }
+    }
+
+    /**
+     * Describes a stub by its parameters, for labelling its metrics and traces. An inline
+     * reference document is identified by a hash rather than given in full.
+     *
+     * @param parameters the stub's wpgMatcher parameters
+     * @return the description
+     */
+    public static String describe(Parameters parameters) {
+        StringBuilder description = new StringBuilder();
+        description.append(parameters.get("method") != null ? parameters.get("method") : "ANY");
+        description.append(' ').append(parameters.get("url") != null ? parameters.get("url") : "*");
+        if (parameters.get("headers") != null) {
+            description.append(" headers=").append(parameters.get("headers"));
+        }
+        if (parameters.get("xpath") != null) {
+            description.append(" xpath=").append(parameters.get("xpath"));
+        }
+        if (parameters.get("xmlLike") != null) {
+            description.append(" xmlLike=#").append(Integer.toHexString(parameters.get("xmlLike").hashCode()));
+        }
+        if (parameters.get("xmlLikeFile") != null) {
+            description.append(" xmlLikeFile=").append(parameters.get("xmlLikeFile"));
+        }
+
+        return description.toString();
+    }
+
+    private static Counter stubCounter(String name, String help, String label) {
+        return label != null
+                ? Metrics.shared().counter(name, help, STUB_LABEL, label)
+                : Metrics.shared().counter(name, help);
+    }
+
+    private void removeMetrics() {
+        // invalid plans all share one series, which stays
+        if (metricsLabel != null && valid) {
+            Metrics.shared().remove(ATTEMPTS_METRIC, STUB_LABEL, metricsLabel);
+            Metrics.shared().remove(MATCHES_METRIC, STUB_LABEL, metricsLabel);
+        }
+    }
+
+    /**
+     * Counts a request the stub has been tried against.
+     */
+    public void recordAttempt() {
+        attempts.increment();
+    }
+
+    /**
+     * Counts a request the stub has matched.
+     */
+    public void recordMatch() {
+        matches.increment();
+    }
+
+    /**
+     * @return false if the stub's parameters are unsupported or malformed
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * @return the required request method, or null for any
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the required url, or null for any
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the required headers, possibly none
+     */
+    public List<HeaderEntry> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return the XPath expressions, or null if there's no xpath parameter
+     */
+    public List<CompiledXPath> getXpaths() {
+        return xpaths;
+    }
+
+    /**
+     * @return the XPath expressions in their streaming form, or null unless there
+     *         is an xpath parameter and every expression has a streaming form
+     */
+    public List<SimpleXPath> getSimpleXpaths() {
+        return simpleXpaths;
+    }
+
+    /**
+     * @return the inline reference document, or null if there's no xmlLike parameter
+     */
+    public ReferenceDocument getXmlLike() {
+        return xmlLike;
+    }
+
+    /**
+     * @return the reference document file name, or null if there's no xmlLikeFile parameter
+     */
+    public String getXmlLikeFile() {
+        return xmlLikeFile;
+    }
+
+    /**
+     * @return true if the body has to be compared with a reference document
+     */
+    public boolean hasReferenceDocument() {
+        return xmlLike != null || xmlLikeFile != null;
+    }
+
+    /**
+     * A required header and its compiled matcher.
+     */
+    public static final class HeaderEntry {
+        private final String name;
+        private final HeaderMatcher matcher;
+
+        private HeaderEntry(String name, HeaderMatcher matcher) {
+            this.name = name;
+            this.matcher = matcher;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public HeaderMatcher getMatcher() {
+            return matcher;
+        }
+    }
+}
@@ -1,58 +1,63 @@
 package com.worldpay.gateway.tokens.wiremock.extension.matchers;
 
 import com.github.tomakehurst.wiremock.extension.Parameters;
-import com.github.tomakehurst.wiremock.http.HttpHeader;
 import com.github.tomakehurst.wiremock.http.Request;
 import com.github.tomakehurst.wiremock.matching.MatchResult;
-import com.github.tomakehurst.wiremock.matching.RegexPattern;
+import com.worldpay.gateway.tokens.wiremock.extension.matchers.MatchPlan.HeaderEntry;
 
-import java.util.Map;
-
-import static com.github.tomakehurst.wiremock.matching.MatchResult.aggregate;
 import static com.github.tomakehurst.wiremock.matching.MatchResult.exactMatch;
-import static java.util.stream.Collectors.toList;
+import static com.github.tomakehurst.wiremock.matching.MatchResult.noMatch;
 
 public class SimpleMatcher {
 
     private final Request request;
-    private final Parameters parameters;
+    private final MatchPlan plan;
 
     public SimpleMatcher(Request request, Parameters parameters) {
+        this(request, MatchPlan.of(parameters));
+    }
+
+    public SimpleMatcher(Request request, MatchPlan plan) {
         this.request = request;
-        this.parameters = parameters;
+        this.plan = plan;
+    }
+
+    /**
+     * Checks the method, then the url, then the headers, stopping at the first
+     * which doesn't match.
+     *
+     * @return an exact match if every check passes, otherwise no match
+     */
+    public MatchResult match() {
+        return MatchResult.of(
+                matchAgainstMethod().isExactMatch()
+                        && matchAgainstUrl().isExactMatch()
+                        && matchAgainstHeaders().isExactMatch()
+        );
     }
 
     public MatchResult matchAgainstMethod() {
         return MatchResult.of(
-                !parameters.containsKey("method")
-                        || parameters.getString("method").equals(request.getMethod().getName())
+                plan.getMethod() == null
+                        || plan.getMethod().equals(request.getMethod().getName())
         );
     }
 
     public MatchResult matchAgainstUrl() {
         return MatchResult.of(
-                !parameters.containsKey("url")
-                        || parameters.getString("url").equals(request.getUrl())
+                plan.getUrl() == null
+                        || plan.getUrl().equals(request.getUrl())
         );
     }
 
-    @SuppressWarnings("unchecked")
     public MatchResult matchAgainstHeaders() {
-        if (!parameters.containsKey("headers")) {
-            return exactMatch();
+        for (HeaderEntry header : plan.getHeaders()) {
+            if (!header.getMatcher().matches(request.getHeaders().getHeader(header.getName()))) {
+                return noMatch();
+            }
         }
 
-        return aggregate(
-                ((Map<String,String>)parameters.get("headers")).entrySet().stream()
-                        .map(kv -> matchAgainstHeader(request.getHeaders().getHeader(kv.getKey()), kv.getValue()))
-                        .collect(toList()));
-    }
-
-    private MatchResult matchAgainstHeader(HttpHeader header, String value) {
-        return MatchResult.of(
-                header.isPresent()
-                        && header.hasValueMatching(new RegexPattern(value))
-        );
+        return exactMatch();
     }
 
 }
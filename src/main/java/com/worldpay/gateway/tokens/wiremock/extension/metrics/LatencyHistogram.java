@@ -0,0 +1,108 @@
+package com.worldpay.gateway.tokens.wiremock.extension.metrics;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations with fixed buckets from one microsecond to ten
+ * seconds. Each bucket is a {@link LongAdder}, so recording takes no locks and
+ * allocates nothing.
+ *
+ * <p>The buckets, sum and count are read separately, so a snapshot taken while
+ * durations are being recorded may be very slightly inconsistent.
+ */
+public final class LatencyHistogram {
+
+    static final long[] BUCKET_BOUNDS_NANOS = {
+            1_000L, 2_500L, 5_000L, 10_000L, 25_000L, 50_000L, 100_000L, 250_000L, 500_000L,
+            1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L,
+            100_000_000L, 250_000_000L, 500_000_000L,
+            1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L
+    };
+
+    /**
+     * The bucket bounds in seconds, as written in the Prometheus {@code le} label.
+     */
+    static final String[] BUCKET_BOUNDS_SECONDS = new String[BUCKET_BOUNDS_NANOS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_BOUNDS_NANOS.length; i++) {
+            BUCKET_BOUNDS_SECONDS[i] = BigDecimal.valueOf(BUCKET_BOUNDS_NANOS[i])
+                    .movePointLeft(9)
+                    .stripTrailingZeros()
+                    .toPlainString();
+        }
+    }
+
+    // one more than the bounds, for durations over the largest
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_NANOS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos the duration to record, in nanoseconds
+     */
+    public void record(long nanos) {
+        long duration = Math.max(nanos, 0);
+        int index = Arrays.binarySearch(BUCKET_BOUNDS_NANOS, duration);
+        buckets[index >= 0 ? index : -index - 1].increment();
+        sumNanos.add(duration);
+    }
+
+    /**
+     * Records the time elapsed since an earlier reading of {@link System#nanoTime()}.
+     *
+     * @param startNanos the earlier reading
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return the number of durations recorded
+     */
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the total of the durations recorded, in seconds
+     */
+    public double sumSeconds() {
+        return (double) sumNanos.sum() / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        sumNanos.reset();
+    }
+
+    /**
+     * @return the number of durations no longer than each bound, in the order
+     *         of {@link #BUCKET_BOUNDS_NANOS}, followed by the total
+     */
+    long[] cumulativeCounts() {
+        long[] counts = new long[buckets.length];
+        long count = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            count += buckets[i].sum();
+            counts[i] = count;
+        }
+
+        return counts;
+    }
+}
@@ -0,0 +1,250 @@
+package com.worldpay.gateway.tokens.wiremock.extension.metrics;
+
+import com.google.common.cache.CacheStats;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * A registry of the counters and histograms recorded by the matchers and the
+ * transformer, which renders them in the Prometheus text exposition format.
+ *
+ * <p>Metrics are grouped into families by name. A family may have series for
+ * several values of a single label, for example one per stub. Looking up a
+ * metric is a map lookup, so callers should do so once, up front, and keep the
+ * result; recording into it never takes a lock.
+ *
+ * <p>Guava {@link CacheStats} are read when the metrics are rendered rather
+ * than recorded as they happen, since the caches already count for themselves.
+ */
+public final class Metrics {
+
+    private static final Metrics shared = new Metrics();
+
+    private static final String COUNTER = "counter";
+    private static final String HISTOGRAM = "histogram";
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, Supplier<CacheStats>> caches = new ConcurrentSkipListMap<>();
+
+    Metrics() {
+    }
+
+    /**
+     * @return the registry shared by every matcher and transformer in this process
+     */
+    public static Metrics shared() {
+        return shared;
+    }
+
+    /**
+     * Gets a counter without labels, creating it on first use.
+     *
+     * @param name the metric name, which should end in {@code _total}
+     * @param help a description of the metric
+     * @return the counter
+     * @throws IllegalArgumentException if the name is in use by a histogram
+     */
+    public Counter counter(String name, String help) {
+        return (Counter) family(name, help, COUNTER).series("", Counter::new);
+    }
+
+    /**
+     * Gets the counter for one value of a label, creating it on first use.
+     *
+     * @param name the metric name, which should end in {@code _total}
+     * @param help a description of the metric
+     * @param labelName the label name
+     * @param labelValue the label value
+     * @return the counter
+     * @throws IllegalArgumentException if the name is in use by a histogram
+     */
+    public Counter counter(String name, String help, String labelName, String labelValue) {
+        return (Counter) family(name, help, COUNTER).series(label(labelName, labelValue), Counter::new);
+    }
+
+    /**
+     * Gets a histogram without labels, creating it on first use.
+     *
+     * @param name the metric name, which should end in {@code _seconds}
+     * @param help a description of the metric
+     * @return the histogram
+     * @throws IllegalArgumentException if the name is in use by a counter
+     */
+    public LatencyHistogram histogram(String name, String help) {
+        return (LatencyHistogram) family(name, help, HISTOGRAM).series("", LatencyHistogram::new);
+    }
+
+    /**
+     * Gets the histogram for one value of a label, creating it on first use.
+     *
+     * @param name the metric name, which should end in {@code _seconds}
+     * @param help a description of the metric
+     * @param labelName the label name
+     * @param labelValue the label value
+     * @return the histogram
+     * @throws IllegalArgumentException if the name is in use by a counter
+     */
+    public LatencyHistogram histogram(String name, String help, String labelName, String labelValue) {
+        return (LatencyHistogram) family(name, help, HISTOGRAM)
+                .series(label(labelName, labelValue), LatencyHistogram::new);
+    }
+
+    /**
+     * Drops the series for one value of a label, for example that of a stub
+     * which has been removed. A counter or histogram already looked up can
+     * still be recorded into, but is no longer rendered.
+     *
+     * @param name the metric name
+     * @param labelName the label name
+     * @param labelValue the label value
+     */
+    public void remove(String name, String labelName, String labelValue) {
+        Family family = families.get(name);
+        if (family != null) {
+            family.series.remove(label(labelName, labelValue));
+        }
+    }
+
+    /**
+     * Reports a cache's hit, miss and eviction counts as the {@code cache}
+     * label of {@code wpg_cache_requests_total} and {@code wpg_cache_evictions_total}.
+     * Registering another cache with the same name replaces the first.
+     *
+     * @param name the cache name
+     * @param stats reads the cache's current stats
+     */
+    public void registerCache(String name, Supplier<CacheStats> stats) {
+        caches.put(name, stats);
+    }
+
+    /**
+     * Sets every counter and histogram back to zero, for example to discard
+     * what was recorded while warming up. Cache stats can't be reset. Anything
+     * recorded while this runs may or may not be kept.
+     */
+    public void reset() {
+        for (Family family : families.values()) {
+            for (Object series : family.series.values()) {
+                if (series instanceof Counter) {
+                    ((Counter) series).reset();
+                } else {
+                    ((LatencyHistogram) series).reset();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return every metric, in the Prometheus text exposition format
+     */
+    public String render() {
+        StringBuilder out = new StringBuilder();
+        for (Family family : families.values()) {
+            family.render(out);
+        }
+
+        if (!caches.isEmpty()) {
+            renderCaches(out);
+        }
+
+        return out.toString();
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+        }
+
+        return family;
+    }
+
+    private void renderCaches(StringBuilder out) {
+        header(out, "wpg_cache_requests_total", "Cache lookups, by cache and result.", COUNTER);
+        for (Map.Entry<String, Supplier<CacheStats>> cache : caches.entrySet()) {
+            CacheStats stats = cache.getValue().get();
+            String labels = label("cache", cache.getKey());
+            sample(out, "wpg_cache_requests_total", labels + ",result=\"hit\"", stats.hitCount());
+            sample(out, "wpg_cache_requests_total", labels + ",result=\"miss\"", stats.missCount());
+        }
+
+        header(out, "wpg_cache_evictions_total", "Entries evicted, by cache.", COUNTER);
+        for (Map.Entry<String, Supplier<CacheStats>> cache : caches.entrySet()) {
+            sample(out, "wpg_cache_evictions_total", label("cache", cache.getKey()),
+                    cache.getValue().get().evictionCount());
+        }
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(escapeHelp(help)).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, Object value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    static String label(String name, String value) {
+        return name + "=\"" + escapeLabelValue(value) + '"';
+    }
+
+    static String escapeLabelValue(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    /**
+     * The series of one metric, keyed by their rendered labels.
+     */
+    private static final class Family {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final ConcurrentMap<String, Object> series = new ConcurrentSkipListMap<>();
+
+        private Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        private Object series(String labels, Supplier<Object> factory) {
+            return series.computeIfAbsent(labels, key -> factory.get());
+        }
+
+        private void render(StringBuilder out) {
+            header(out, name, help, type);
+            for (Map.Entry<String, Object> entry : series.entrySet()) {
+                if (entry.getValue() instanceof Counter) {
+                    sample(out, name, entry.getKey(), ((Counter) entry.getValue()).get());
+                } else {
+                    renderHistogram(out, entry.getKey(), (LatencyHistogram) entry.getValue());
+                }
+            }
+        }
+
+        private void renderHistogram(StringBuilder out, String labels, LatencyHistogram histogram) {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long[] counts = histogram.cumulativeCounts();
+            for (int i = 0; i < LatencyHistogram.BUCKET_BOUNDS_SECONDS.length; i++) {
+                sample(out, name + "_bucket",
+                        prefix + "le=\"" + LatencyHistogram.BUCKET_BOUNDS_SECONDS[i] + '"', counts[i]);
+            }
+
+            long count = counts[counts.length - 1];
+            sample(out, name + "_bucket", prefix + "le=\"+Inf\"", count);
+            sample(out, name + "_sum", labels, histogram.sumSeconds());
+            sample(out, name + "_count", labels, count);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.worldpay.gateway.tokens.wiremock.extension.xml;
+
+import com.github.tomakehurst.wiremock.common.TextFile;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A process-wide cache of the parsed reference documents used by the
+ * {@code xmlLike} and {@code xmlLikeFile} matchers.
+ *
+ * <p>Inline documents are keyed by their content. File documents are keyed by
+ * URI and reloaded whenever the file's modification time changes, so many stubs
+ * pointing at the same example file share a single parsed tree.
+ *
+ * <p>Cached trees are shared between threads, so they are built fully expanded
+ * by {@link XmlParsers} (Xerces otherwise expands nodes lazily, on read) and
+ * must only be read through
+ * {@link org.w3c.dom.Node#getFirstChild()}, {@link org.w3c.dom.Node#getNextSibling()},
+ * {@link org.w3c.dom.Node#getAttributes()} and similar accessors, which don't
+ * modify the tree.
+ */
+public final class ReferenceDocuments {
+
+    static final long MAXIMUM_SIZE = 10_000;
+
+    private static final ReferenceDocuments shared = new ReferenceDocuments(MAXIMUM_SIZE);
+
+    private final Cache<String, ReferenceDocument> inline;
+    private final Cache<URI, ReferenceDocument> files;
+
+    ReferenceDocuments(long maximumSize) {
+        inline = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+        files = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    /**
+     * @return the cache shared by every matcher in this process
+     */
+    public static ReferenceDocuments shared() {
+        return shared;
+    }
+
+    /**
+     * Gets the parsed form of an inline reference document.
+     *
+     * @param xml the document source
+     * @return the parsed document, which may be invalid
+     */
+    public ReferenceDocument inline(String xml) {
+        try {
+            return inline.get(xml, () -> parse(xml, 0));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Gets the parsed form of a reference document file, reading the file again
+     * only if it has been modified since it was last read. Files which aren't on
+     * the local file system are assumed never to change.
+     *
+     * @param file the document file
+     * @return the parsed document, which may be invalid
+     */
+    public ReferenceDocument file(TextFile file) {
+        URI uri = file.getUri();
+        if (uri == null) {
+            return parse(file.readContentsAsString(), 0);
+        }
+
+        long lastModified = "file".equals(uri.getScheme()) ? new File(uri).lastModified() : 0;
+        ReferenceDocument cached = files.getIfPresent(uri);
+        if (cached != null && cached.lastModified == lastModified) {
+            return cached;
+        }
+
+        ReferenceDocument loaded = parse(file.readContentsAsString(), lastModified);
+        files.put(uri, loaded);
+        return loaded;
+    }
+
+    /**
+     * Drops the parsed form of a reference document file, for example when it
+     * is seen to change, so it is read again when it is next used.
+     *
+     * @param uri the file's URI, which may contain {@code .} or {@code ..} segments
+     */
+    public void invalidate(URI uri) {
+        URI normalized = uri.normalize();
+        files.asMap().keySet().removeIf(key -> key.normalize().equals(normalized));
+    }
+
+    /**
+     * @return hit, miss and eviction counts for inline and file documents combined
+     */
+    public CacheStats stats() {
+        return inline.stats().plus(files.stats());
+    }
+
+    private ReferenceDocument parse(String xml, long lastModified) {
+        try {
+            Document document = XmlParsers.parse(new InputSource(new StringReader(xml)));
+            return new ReferenceDocument(document, lastModified);
+        } catch (SAXException | IOException e) {
+            return new ReferenceDocument(null, lastModified);
+        }
+    }
+
+    /**
+     * A parsed reference document, or the record that it couldn't be parsed.
+     */
+    public static final class ReferenceDocument {
+        private final Document document;
+        private final long fingerprint;
+        private final long lastModified;
+
+        private ReferenceDocument(Document document, long lastModified) {
+            this.document = document;
+            this.fingerprint = document != null ? StructuralFingerprint.of(document) : 0;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return false if the reference document isn't well-formed XML
+         */
+        public boolean isValid() {
+            return document != null;
+        }
+
+        /**
+         * @return the parsed document, which must not be modified, or null if invalid
+         */
+        public Document getDocument() {
+            return document;
+        }
+
+        /**
+         * @return the {@link StructuralFingerprint} of the document, computed when it was loaded
+         */
+        public long getFingerprint() {
+            return fingerprint;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.worldpay.gateway.tokens.wiremock.extension.xml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An XPath expression from the subset which {@link StreamingXPathEvaluator} can
+ * answer without building a DOM: an absolute path of plain element names, each
+ * optionally with attribute predicates, and optionally ending in an attribute.
+ * For example {@code /some/of/and[@another='fixed']} or {@code /xml/with/some/@and}.
+ *
+ * <p>Predicates test either that an attribute is present, {@code [@name]}, or
+ * that it has an exact value, {@code [@name='value']}. Anything else, including
+ * whitespace between tokens, puts an expression outside the subset.
+ */
+public final class SimpleXPath {
+
+    private static final String NAME = "[A-Za-z_][\\w.\\-]*";
+
+    private static final Pattern STEP = Pattern.compile(
+            "/(" + NAME + ")((?:\\[@" + NAME + "(?:='[^']*'|=\"[^\"]*\")?\\])*)");
+    private static final Pattern PREDICATE = Pattern.compile(
+            "\\[@(" + NAME + ")(?:='([^']*)'|=\"([^\"]*)\")?\\]");
+    private static final Pattern ATTRIBUTE = Pattern.compile("/@(" + NAME + ")");
+
+    private final String expression;
+    private final List<Step> steps;
+    private final String attribute;
+
+    private SimpleXPath(String expression, List<Step> steps, String attribute) {
+        this.expression = expression;
+        this.steps = steps;
+        this.attribute = attribute;
+    }
+
+    /**
+     * Parses an expression, if it belongs to the subset.
+     *
+     * @param expression the XPath expression
+     * @return the parsed expression, or null if it is outside the subset
+     */
+    public static SimpleXPath parse(String expression) {
+        List<Step> steps = new ArrayList<>();
+        Matcher step = STEP.matcher(expression);
+        int position = 0;
+
+        while (position < expression.length() && step.region(position, expression.length()).lookingAt()) {
+            steps.add(new Step(step.group(1), predicatesOf(step.group(2))));
+            position = step.end();
+        }
+
+        String attribute = null;
+        if (position < expression.length()) {
+            Matcher trailing = ATTRIBUTE.matcher(expression).region(position, expression.length());
+            if (!trailing.matches()) {
+                return null;
+            }
+            attribute = trailing.group(1);
+        }
+
+        return steps.isEmpty() ? null : new SimpleXPath(expression, Collections.unmodifiableList(steps), attribute);
+    }
+
+    private static List<Predicate> predicatesOf(String source) {
+        List<Predicate> predicates = new ArrayList<>();
+        Matcher predicate = PREDICATE.matcher(source);
+        while (predicate.find()) {
+            String value = predicate.group(2) != null ? predicate.group(2) : predicate.group(3);
+            predicates.add(new Predicate(predicate.group(1), value));
+        }
+
+        return Collections.unmodifiableList(predicates);
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * @return the element steps, starting from the document element
+     */
+    List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return the attribute selected from the last element, or null if the
+     *         expression selects the element itself
+     */
+    String getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * Builds the smallest document in which this expression selects something,
+     * for exercising a stub's matchers without a real request.
+     *
+     * @return the document source
+     */
+    public String sampleDocument() {
+        StringBuilder document = new StringBuilder();
+        for (int i = 0; i < steps.size(); i++) {
+            Step step = steps.get(i);
+            document.append('<').append(step.name);
+            for (Predicate predicate : step.predicates) {
+                appendAttribute(document, predicate.attribute, predicate.value);
+            }
+            if (i == steps.size() - 1 && attribute != null) {
+                appendAttribute(document, attribute, null);
+            }
+            document.append('>');
+        }
+
+        for (int i = steps.size() - 1; i >= 0; i--) {
+            document.append("</").append(steps.get(i).name).append('>');
+        }
+
+        return document.toString();
+    }
+
+    private static void appendAttribute(StringBuilder document, String name, String value) {
+        String escaped = value == null ? "" : value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+        document.append(' ').append(name).append("=\"").append(escaped).append('"');
+    }
+
+    /**
+     * One element step of a path.
+     */
+    static final class Step {
+        final String name;
+        final List<Predicate> predicates;
+
+        private Step(String name, List<Predicate> predicates) {
+            this.name = name;
+            this.predicates = predicates;
+        }
+    }
+
+    /**
+     * An attribute test on a step. A null value means the attribute only has to
+     * be present.
+     */
+    static final class Predicate {
+        final String attribute;
+        final String value;
+
+        private Predicate(String attribute, String value) {
+            this.attribute = attribute;
+            this.value = value;
+        }
+    }
+}
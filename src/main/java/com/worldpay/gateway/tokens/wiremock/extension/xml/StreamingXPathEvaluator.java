@@ -0,0 +1,192 @@
+package com.worldpay.gateway.tokens.wiremock.extension.xml;
+
+import com.worldpay.gateway.tokens.wiremock.extension.xml.SimpleXPath.Predicate;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.SimpleXPath.Step;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+/**
+ * Answers {@link SimpleXPath} expressions from a single StAX pass over a
+ * document, without building a DOM.
+ *
+ * <p>The results agree with evaluating the same expressions against the
+ * non-namespace-aware DOM built by {@link com.worldpay.gateway.tokens.wiremock.extension.RequestContext}.
+ * Where that can't be guaranteed the evaluator gives up and returns null, so
+ * the caller falls back to the DOM. It does so for documents which aren't
+ * well-formed, and for prefixed names on any element it has to test.
+ */
+public final class StreamingXPathEvaluator {
+
+    private static final int NO_MATCH = 0;
+    private static final int MATCH = 1;
+    private static final int UNKNOWN = 2;
+
+    private StreamingXPathEvaluator() {
+    }
+
+    /**
+     * Evaluates several expressions against a document in one pass.
+     *
+     * <p>The whole document is read, so that a match is only reported for a
+     * well-formed document. The exception is when the document element rules
+     * out every expression, in which case reading stops there and every result
+     * is false.
+     *
+     * @param xml the document source
+     * @param encoding the document's encoding, or null to detect it
+     * @param xpaths the expressions to evaluate
+     * @return whether each expression selects anything, in the same order as
+     *         {@code xpaths}, or null if the document has to be parsed into a DOM
+     *         to answer them
+     */
+    public static boolean[] evaluate(byte[] xml, String encoding, List<SimpleXPath> xpaths) {
+        int[] matchedDepth = new int[xpaths.size()];
+        boolean[] results = new boolean[xpaths.size()];
+
+        XMLStreamReader reader = null;
+        try {
+            reader = XmlParsers.createStreamReader(new ByteArrayInputStream(xml), encoding);
+
+            int depth = 0;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case START_ELEMENT:
+                        for (int i = 0; i < xpaths.size(); i++) {
+                            if (!results[i] && matchedDepth[i] == depth) {
+                                int result = testElement(reader, xpaths.get(i), depth);
+                                if (result == UNKNOWN) {
+                                    return null;
+                                } else if (result == MATCH) {
+                                    matchedDepth[i] = depth + 1;
+                                    results[i] = matchedDepth[i] == xpaths.get(i).getSteps().size();
+                                }
+                            }
+                        }
+
+                        depth++;
+                        if (depth == 1 && noneCanMatch(matchedDepth, results)) {
+                            return results;
+                        }
+                        break;
+
+                    case END_ELEMENT:
+                        depth--;
+                        for (int i = 0; i < matchedDepth.length; i++) {
+                            matchedDepth[i] = Math.min(matchedDepth[i], depth);
+                        }
+                        break;
+
+                    default:
+                        break;
+                }
+            }
+
+            return results;
+        } catch (XMLStreamException e) {
+            return null;
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Reads a document only as far as its document element.
+     *
+     * @param xml the document source
+     * @param encoding the document's encoding, or null to detect it
+     * @return the name of the document element, or null if there isn't one or
+     *         the document is malformed before it
+     */
+    public static String rootElementName(byte[] xml, String encoding) {
+        XMLStreamReader reader = null;
+        try {
+            reader = XmlParsers.createStreamReader(new ByteArrayInputStream(xml), encoding);
+            while (reader.hasNext()) {
+                if (reader.next() == START_ELEMENT) {
+                    return reader.getLocalName();
+                }
+            }
+
+            return null;
+        } catch (XMLStreamException e) {
+            return null;
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Tests the element the reader is positioned on against the step of an
+     * expression at the element's depth. For the last step, the expression's
+     * trailing attribute must be present too.
+     */
+    private static int testElement(XMLStreamReader reader, SimpleXPath xpath, int depth) {
+        List<Step> steps = xpath.getSteps();
+        if (depth >= steps.size()) {
+            return NO_MATCH;
+        }
+
+        // the DOM isn't namespace-aware, so XPath's view of a prefixed name
+        // is left to the DOM to decide
+        String name = reader.getLocalName();
+        if (name.indexOf(':') >= 0) {
+            return UNKNOWN;
+        }
+
+        Step step = steps.get(depth);
+        if (!step.name.equals(name)) {
+            return NO_MATCH;
+        }
+
+        boolean last = depth == steps.size() - 1;
+        if (step.predicates.isEmpty() && !(last && xpath.getAttribute() != null)) {
+            return MATCH;
+        }
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String prefix = reader.getAttributePrefix(i);
+            if ((prefix != null && !prefix.isEmpty()) || "xmlns".equals(reader.getAttributeLocalName(i))) {
+                return UNKNOWN;
+            }
+        }
+
+        for (Predicate predicate : step.predicates) {
+            String value = reader.getAttributeValue(null, predicate.attribute);
+            if (value == null || (predicate.value != null && !predicate.value.equals(value))) {
+                return NO_MATCH;
+            }
+        }
+
+        if (last && xpath.getAttribute() != null && reader.getAttributeValue(null, xpath.getAttribute()) == null) {
+            return NO_MATCH;
+        }
+
+        return MATCH;
+    }
+
+    private static boolean noneCanMatch(int[] matchedDepth, boolean[] results) {
+        for (int i = 0; i < matchedDepth.length; i++) {
+            if (results[i] || matchedDepth[i] > 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // nothing left to release
+            }
+        }
+    }
+}
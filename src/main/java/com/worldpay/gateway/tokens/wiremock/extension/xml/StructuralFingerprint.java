@@ -0,0 +1,97 @@
+package com.worldpay.gateway.tokens.wiremock.extension.xml;
+
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import static org.w3c.dom.Node.ELEMENT_NODE;
+
+/**
+ * Reduces an XML tree to a 64-bit hash of its structure, as compared by the
+ * {@code xmlLike} matchers: element names, the set of attribute names on each
+ * element, and the number and order of child elements. Text, attribute values,
+ * comments and the order of attributes are ignored.
+ *
+ * <p>Two trees with the same structure always have the same fingerprint, so
+ * different fingerprints prove that two trees don't match. Equal fingerprints
+ * are very likely, but not certain, to mean a match, so callers should confirm
+ * with a full comparison.
+ */
+public final class StructuralFingerprint {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private StructuralFingerprint() {
+    }
+
+    /**
+     * Fingerprints a node and every element beneath it, in a single pass.
+     *
+     * @param node the root of the tree, usually a {@link org.w3c.dom.Document}
+     * @return the structural fingerprint of the tree
+     */
+    public static long of(Node node) {
+        return fingerprint(FNV_OFFSET_BASIS, node);
+    }
+
+    private static long fingerprint(long hash, Node node) {
+        hash = combine(hash, hashOf(node.getNodeName()));
+        hash = combine(hash, hashOfAttributeNames(node.getAttributes()));
+
+        int childElements = 0;
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == ELEMENT_NODE) {
+                childElements++;
+            }
+        }
+        hash = combine(hash, childElements);
+
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == ELEMENT_NODE) {
+                hash = fingerprint(hash, child);
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * Hashes a set of attribute names independently of their order, by summing
+     * the mixed hash of each name.
+     */
+    private static long hashOfAttributeNames(NamedNodeMap attributes) {
+        if (attributes == null) {
+            return 0;
+        }
+
+        long sum = attributes.getLength();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            sum += mix(hashOf(attributes.item(i).getNodeName()));
+        }
+
+        return sum;
+    }
+
+    private static long hashOf(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+
+        return hash;
+    }
+
+    private static long combine(long hash, long value) {
+        return (hash ^ mix(value)) * FNV_PRIME;
+    }
+
+    /**
+     * The finalisation step of SplitMix64, which spreads every input bit across
+     * the whole output.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,179 @@
+package com.worldpay.gateway.tokens.wiremock.extension.xml;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+
+/**
+ * A bounded, thread-safe cache of compiled XPath expressions, keyed by the
+ * expression string.
+ *
+ * <p>Expressions which fail to compile are remembered as such, so a broken
+ * expression in a stub costs one failed compilation rather than one per request.
+ *
+ * <p>Neither {@link XPath} nor {@link XPathExpression} is guaranteed to be
+ * thread-safe, so each thread evaluating an expression gets its own compiled
+ * copy. The expression is validated once, when it is first added to the cache.
+ */
+public final class XPathCache {
+
+    static final long MAXIMUM_SIZE = 10_000;
+
+    private static final XPathCache shared = new XPathCache(MAXIMUM_SIZE);
+
+    private final LoadingCache<String, CompiledXPath> cache;
+
+    XPathCache(long maximumSize) {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build(new CacheLoader<String, CompiledXPath>() {
+                    @Override
+                    public CompiledXPath load(String expression) {
+                        return new CompiledXPath(expression);
+                    }
+                });
+    }
+
+    /**
+     * @return the cache shared by every matcher and helper in this process
+     */
+    public static XPathCache shared() {
+        return shared;
+    }
+
+    /**
+     * Gets the compiled form of an expression, compiling it on first use.
+     *
+     * @param expression the XPath expression
+     * @return the compiled expression, which may be invalid
+     */
+    public CompiledXPath compile(String expression) {
+        return cache.getUnchecked(expression);
+    }
+
+    /**
+     * @return hit, miss and eviction counts for this cache
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return the number of expressions currently cached
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    private static XPathExpression compileOnCurrentThread(String expression) throws XPathExpressionException {
+        return XmlParsers.xpath().compile(expression);
+    }
+
+    /**
+     * An XPath expression which has been compiled, or has failed to compile.
+     */
+    public static final class CompiledXPath {
+        private final String expression;
+        private final XPathExpressionException error;
+        private final ThreadLocal<XPathExpression> compiled;
+        private final SimpleXPath simpleForm;
+
+        private CompiledXPath(String expression) {
+            XPathExpression first = null;
+            XPathExpressionException error = null;
+            try {
+                first = compileOnCurrentThread(expression);
+            } catch (XPathExpressionException e) {
+                error = e;
+            }
+
+            this.expression = expression;
+            this.error = error;
+            this.compiled = error == null ? new CompiledOnThread(expression, first) : null;
+            this.simpleForm = error == null ? SimpleXPath.parse(expression) : null;
+        }
+
+        public String getExpression() {
+            return expression;
+        }
+
+        /**
+         * @return false if the expression failed to compile
+         */
+        public boolean isValid() {
+            return error == null;
+        }
+
+        /**
+         * @return this expression as a {@link SimpleXPath}, or null if it is
+         *         outside the subset which can be evaluated by streaming
+         */
+        public SimpleXPath getSimpleForm() {
+            return simpleForm;
+        }
+
+        /**
+         * Evaluates this expression to a node set.
+         *
+         * @param context the node to evaluate against
+         * @return the matching nodes
+         * @throws XPathExpressionException if the expression is invalid or can't
+         *         be evaluated as a node set
+         */
+        public NodeList evaluateNodeSet(Node context) throws XPathExpressionException {
+            return (NodeList) evaluate(context, XPathConstants.NODESET);
+        }
+
+        /**
+         * Evaluates this expression to a string.
+         *
+         * @param context the node to evaluate against
+         * @return the string value of the result
+         * @throws XPathExpressionException if the expression is invalid or can't be evaluated
+         */
+        public String evaluateString(Node context) throws XPathExpressionException {
+            return (String) evaluate(context, XPathConstants.STRING);
+        }
+
+        private Object evaluate(Node context, QName returnType) throws XPathExpressionException {
+            if (error != null) {
+                throw error;
+            }
+
+            return compiled.get().evaluate(context, returnType);
+        }
+    }
+
+    /**
+     * Holds one compiled copy of an expression per thread, seeded with the copy
+     * compiled while validating the expression.
+     */
+    private static final class CompiledOnThread extends ThreadLocal<XPathExpression> {
+        private final String expression;
+
+        private CompiledOnThread(String expression, XPathExpression first) {
+            this.expression = expression;
+            set(first);
+        }
+
+        @Override
+        protected XPathExpression initialValue() {
+            try {
+                return compileOnCurrentThread(expression);
+            } catch (XPathExpressionException e) {
+                // already compiled successfully once, so this can't happen
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.worldpay.gateway.tokens.wiremock.extension.xml;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The XML parsing infrastructure shared by the matchers, the template model and
+ * the template helpers.
+ *
+ * <p>The factories are looked up and configured once per process: external DTDs
+ * are never loaded, since they can't be resolved from inside a Docker container,
+ * and DOMs are built fully expanded so they can safely be read from several
+ * threads. {@link DocumentBuilder} and {@link XPath} aren't thread-safe, so each
+ * thread reuses its own instance, which is reset between uses.
+ */
+public final class XmlParsers {
+
+    private static final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+    private static final XPathFactory xpathFactory = XPathFactory.newInstance();
+    private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+    static {
+        try {
+            documentBuilderFactory
+                    .setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            documentBuilderFactory
+                    .setFeature("http://apache.org/xml/features/dom/defer-node-expansion", false);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+
+        // the internal subset is processed, as it is for DOMs, but the external
+        // DTD resolves to nothing
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        inputFactory.setXMLResolver((publicId, systemId, baseUri, namespace) -> new ByteArrayInputStream(new byte[0]));
+    }
+
+    private static final ThreadLocal<DocumentBuilder> documentBuilders = ThreadLocal.withInitial(() -> {
+        try {
+            return documentBuilderFactory.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private static final ThreadLocal<XPath> xpaths = ThreadLocal.withInitial(xpathFactory::newXPath);
+
+    private XmlParsers() {
+    }
+
+    /**
+     * Parses a document using this thread's {@link DocumentBuilder}.
+     *
+     * @param source the document source
+     * @return the parsed document, which is no longer referenced by the builder
+     * @throws SAXException if the source is not well-formed XML
+     * @throws IOException if the source could not be read
+     */
+    public static Document parse(InputSource source) throws SAXException, IOException {
+        DocumentBuilder builder = documentBuilders.get();
+        try {
+            return builder.parse(source);
+        } finally {
+            builder.reset();
+        }
+    }
+
+    /**
+     * @return this thread's {@link XPath}, reset to its initial configuration
+     */
+    public static XPath xpath() {
+        XPath xpath = xpaths.get();
+        xpath.reset();
+        return xpath;
+    }
+
+    /**
+     * Creates a StAX reader which neither loads external DTDs nor is
+     * namespace-aware, matching the DOMs built by {@link #parse(InputSource)}.
+     *
+     * @param source the document source
+     * @param encoding the document's encoding, or null to detect it from the
+     *        XML declaration
+     * @return a new reader, which the caller must close
+     * @throws XMLStreamException if the reader can't be created
+     */
+    public static XMLStreamReader createStreamReader(InputStream source, String encoding) throws XMLStreamException {
+        return encoding != null
+                ? inputFactory.createXMLStreamReader(source, encoding)
+                : inputFactory.createXMLStreamReader(source);
+    }
+}
@@ -0,0 +1,96 @@
+package com.worldpay.gateway.tokens.wiremock;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.standalone.WireMockServerRunner;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link WpgWireMockServerRunner}.
+ */
+public class WpgWireMockServerRunnerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void start_returnsRunningServerUsingGivenOptions() throws Exception {
+        String rootDir = folder.getRoot().getAbsolutePath();
+
+        WireMockServerRunner runner = WpgWireMockServerRunner.start(
+                "--port", "0",
+                "--root-dir", rootDir,
+                "--extensions", "com.worldpay.gateway.tokens.wiremock.extension.WpgResponseTemplateTransformer,"
+                        + "com.worldpay.gateway.tokens.wiremock.extension.WpgRequestMatcher");
+        try {
+            assertTrue(runner.isRunning());
+            assertTrue(runner.port() > 0);
+            assertEquals(rootDir, WpgWireMockServerRunner.getOptions().filesRoot().getPath());
+        } finally {
+            runner.stop();
+        }
+
+        assertFalse(runner.isRunning());
+    }
+
+    @Test
+    public void start_savesEditedStubIntoItsOwnFile() throws Exception {
+        File mappings = folder.newFolder("mappings");
+        File mapping = new File(mappings, "a.json");
+        FileUtils.writeStringToFile(mapping,
+                "{\"request\": {\"url\": \"/a\"}, \"response\": {\"body\": \"a\"}}", UTF_8);
+
+        WireMockServerRunner runner = WpgWireMockServerRunner.start(
+                "--port", "0", "--root-dir", folder.getRoot().getAbsolutePath());
+        try {
+            WireMock wireMock = new WireMock(runner.port());
+            StubMapping stub = wireMock.allStubMappings().getMappings().get(0);
+            wireMock.editStubMapping(get(urlEqualTo("/a"))
+                    .withId(stub.getId())
+                    .willReturn(aResponse().withBody("edited")));
+
+            wireMock.saveMappings();
+        } finally {
+            runner.stop();
+        }
+
+        assertThat(mappings.list().length, is(1));
+        assertThat(FileUtils.readFileToString(mapping, UTF_8), containsString("\"body\" : \"edited\""));
+    }
+
+    @Test
+    public void start_printsWireMocksBannerAndOptions() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(out, true, "UTF-8"));
+        WireMockServerRunner runner;
+        try {
+            runner = WpgWireMockServerRunner.start("--port", "0", "--root-dir", folder.getRoot().getAbsolutePath());
+        } finally {
+            System.setOut(stdout);
+        }
+        runner.stop();
+
+        String printed = out.toString("UTF-8");
+        assertThat(printed, containsString("| $$  /$ | $$|__/"));
+        assertThat(printed, containsString("port:"));
+    }
+}
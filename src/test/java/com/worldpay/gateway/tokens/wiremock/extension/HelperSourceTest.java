@@ -3,6 +3,7 @@ package com.worldpay.gateway.tokens.wiremock.extension;
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -15,6 +16,9 @@ import javax.xml.xpath.XPathFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -45,6 +49,23 @@ public class HelperSourceTest {
         assertEquals("", digits);
     }
 
+    @Test
+    public void randomDigits_isReproducibleWithSeed() throws Exception {
+        HelperSource first = new HelperSource(RandomDigits.seeded(42), Clock.systemDefaultZone());
+        HelperSource second = new HelperSource(RandomDigits.seeded(42), Clock.systemDefaultZone());
+
+        assertEquals(first.randomDigits(20), second.randomDigits(20));
+    }
+
+    @Test
+    public void xmlDate_usesClock() throws Exception {
+        Clock clock = Clock.fixed(Instant.parse("2017-06-26T09:56:38Z"), ZoneOffset.UTC);
+        HelperSource helperSource = new HelperSource(RandomDigits.unseeded(), clock);
+
+        assertEquals("<date dayOfMonth=\"27\" month=\"06\" year=\"2017\" hour=\"09\" minute=\"56\" second=\"38\"/>",
+                helperSource.xmlDate(1).toString());
+    }
+
     @Test
     public void xmlDate_returnsDateIncludingDayOfMonth() throws Exception {
         String xmlDate = helperSource.xmlDate(10).toString();
@@ -139,4 +160,35 @@ public class HelperSourceTest {
 
         helperSource.xpath(xml, "/test\\xml/with/aString");
     }
+
+    @Test
+    public void xpath_evaluatesEachExpressionOncePerDocument() throws Exception {
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        InputStream inputStream =
+                IOUtils.toInputStream("<test><xml><with aString='TEST_RESULT'/></xml></test>", Charset.defaultCharset());
+        Document xml = builder.parse(inputStream);
+
+        assertEquals("TEST_RESULT", helperSource.xpath(xml, "/test/xml/with/@aString"));
+        ((Element) xml.getElementsByTagName("with").item(0)).setAttribute("aString", "CHANGED");
+
+        assertEquals("TEST_RESULT", helperSource.xpath(xml, "/test/xml/with/@aString"));
+        assertEquals("CHANGED", helperSource.xpath(xml, "string(/test/xml/with/@aString)"));
+    }
+
+    @Test
+    public void xpath_evaluatesEachDocumentSeparately() throws Exception {
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        Document first = builder.parse(
+                IOUtils.toInputStream("<test><with aString='FIRST'/></test>", Charset.defaultCharset()));
+        Document second = builder.parse(
+                IOUtils.toInputStream("<test><with aString='SECOND'/></test>", Charset.defaultCharset()));
+
+        assertEquals("FIRST", helperSource.xpath(first, "/test/with/@aString"));
+        assertEquals("SECOND", helperSource.xpath(second, "/test/with/@aString"));
+    }
+
+    @Test(expected = IOException.class)
+    public void xpath_throwsExceptionWithoutDocument() throws Exception {
+        helperSource.xpath(null, "/test/with/@aString");
+    }
 }
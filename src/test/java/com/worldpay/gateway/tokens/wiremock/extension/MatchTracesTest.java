@@ -0,0 +1,94 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.worldpay.gateway.tokens.wiremock.testsupport.MockRequest.mockRequest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link MatchTraces}.
+ */
+public class MatchTracesTest {
+
+    private MatchTraces traces;
+
+    @Before
+    public void setUp() {
+        traces = new MatchTraces(2);
+    }
+
+    @Test
+    public void start_returnsNullForUntracedRequest() {
+        assertNull(traces.start(mockRequest()));
+        assertTrue(traces.recent().isEmpty());
+    }
+
+    @Test
+    public void start_usesHeaderValueAsId() {
+        MatchTrace trace = traces.start(mockRequest()
+                .url("/traced")
+                .method(RequestMethod.POST)
+                .withHeader(MatchTraces.TRACE_HEADER, " my-trace "));
+
+        assertEquals("my-trace", trace.getId());
+        assertEquals("POST", trace.getMethod());
+        assertEquals("/traced", trace.getUrl());
+        assertSame(trace, traces.get("my-trace"));
+    }
+
+    @Test
+    public void start_generatesIdWhenHeaderValueIsTrue() {
+        MatchTrace first = traces.start(mockRequest().withHeader(MatchTraces.TRACE_HEADER, "true"));
+        MatchTrace second = traces.start(mockRequest().withHeader(MatchTraces.TRACE_HEADER, "true"));
+
+        assertFalse(first.getId().equals(second.getId()));
+    }
+
+    @Test
+    public void start_tracesEveryRequestWhenEnabled() {
+        traces.setEnabled(true);
+
+        MatchTrace trace = traces.start(mockRequest());
+
+        assertNotNull(trace);
+        assertSame(trace, traces.get(trace.getId()));
+    }
+
+    @Test
+    public void recent_keepsMostRecentTracesFirst() {
+        traces.start(mockRequest().withHeader(MatchTraces.TRACE_HEADER, "1"));
+        traces.start(mockRequest().withHeader(MatchTraces.TRACE_HEADER, "2"));
+        traces.start(mockRequest().withHeader(MatchTraces.TRACE_HEADER, "3"));
+
+        assertEquals(2, traces.recent().size());
+        assertEquals("3", traces.recent().get(0).getId());
+        assertEquals("2", traces.recent().get(1).getId());
+        assertNull(traces.get("1"));
+    }
+
+    @Test
+    public void start_replacesTraceWithSameId() {
+        traces.start(mockRequest().withHeader(MatchTraces.TRACE_HEADER, "1"));
+        traces.start(mockRequest().withHeader(MatchTraces.TRACE_HEADER, "2"));
+        MatchTrace replacement = traces.start(mockRequest().withHeader(MatchTraces.TRACE_HEADER, "1"));
+
+        assertSame(replacement, traces.recent().get(0));
+        assertEquals(2, traces.recent().size());
+    }
+
+    @Test
+    public void clear_discardsEveryTrace() {
+        traces.start(mockRequest().withHeader(MatchTraces.TRACE_HEADER, "1"));
+
+        traces.clear();
+
+        assertTrue(traces.recent().isEmpty());
+    }
+}
@@ -0,0 +1,92 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link RandomDigits}.
+ */
+public class RandomDigitsTest {
+
+    @After
+    public void clearSeed() {
+        System.clearProperty(RandomDigits.SEED_PROPERTY);
+    }
+
+    @Test
+    public void next_returnsNumberOfDigitsRequested() {
+        for (RandomDigits randomDigits : new RandomDigits[] {RandomDigits.unseeded(), RandomDigits.seeded(1)}) {
+            for (int count : new int[] {0, 1, 17, 18, 19, 36, 100}) {
+                String digits = randomDigits.next(count);
+
+                assertEquals(count, digits.length());
+                assertTrue(digits, digits.matches("^\\d*$"));
+            }
+        }
+    }
+
+    @Test
+    public void next_returnsEmptyStringForNegativeCount() {
+        assertEquals("", RandomDigits.unseeded().next(-1));
+    }
+
+    @Test
+    public void next_isReproducibleForSameSeed() {
+        RandomDigits first = RandomDigits.seeded(42);
+        RandomDigits second = RandomDigits.seeded(42);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(first.next(i), second.next(i));
+        }
+    }
+
+    @Test
+    public void next_differsForDifferentSeeds() {
+        assertNotEquals(RandomDigits.seeded(1).next(36), RandomDigits.seeded(2).next(36));
+    }
+
+    @Test
+    public void reset_startsSeededSequenceAgain() {
+        RandomDigits randomDigits = RandomDigits.seeded(42);
+        String first = randomDigits.next(40);
+
+        randomDigits.reset();
+
+        assertEquals(first, randomDigits.next(40));
+    }
+
+    @Test
+    public void next_usesEveryDigitEvenly() {
+        for (RandomDigits randomDigits : new RandomDigits[] {RandomDigits.unseeded(), RandomDigits.seeded(7)}) {
+            int[] counts = new int[10];
+            String digits = randomDigits.next(100_000);
+            for (int i = 0; i < digits.length(); i++) {
+                counts[digits.charAt(i) - '0']++;
+            }
+
+            for (int count : counts) {
+                assertTrue(String.valueOf(count), count > 9_000 && count < 11_000);
+            }
+        }
+    }
+
+    @Test
+    public void fromSystemProperties_isUnseededByDefault() {
+        assertFalse(RandomDigits.fromSystemProperties().isSeeded());
+    }
+
+    @Test
+    public void fromSystemProperties_usesConfiguredSeed() {
+        System.setProperty(RandomDigits.SEED_PROPERTY, " 42 ");
+
+        RandomDigits randomDigits = RandomDigits.fromSystemProperties();
+
+        assertTrue(randomDigits.isSeeded());
+        assertEquals(RandomDigits.seeded(42).next(40), randomDigits.next(40));
+    }
+}
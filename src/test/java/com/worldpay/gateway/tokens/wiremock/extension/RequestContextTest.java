@@ -0,0 +1,170 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.http.Request;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.SimpleXPath;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.StructuralFingerprint;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXParseException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.worldpay.gateway.tokens.wiremock.testsupport.MockRequest.mockRequest;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link RequestContext}.
+ */
+public class RequestContextTest {
+
+    @Test
+    public void of_returnsSameContextForSameRequest() {
+        Request request = mockRequest().body("<xml/>");
+
+        assertSame(RequestContext.of(request), RequestContext.of(request));
+    }
+
+    @Test
+    public void of_returnsDifferentContextsForDifferentRequests() {
+        assertNotSame(
+                RequestContext.of(mockRequest().body("<xml/>")),
+                RequestContext.of(mockRequest().body("<xml/>")));
+    }
+
+    @Test
+    public void getXmlBody_parsesBodyOnce() throws Exception {
+        RequestContext context = RequestContext.of(mockRequest().body("<xml><with/></xml>"));
+
+        Document first = context.getXmlBody();
+
+        assertEquals("xml", first.getDocumentElement().getNodeName());
+        assertSame(first, context.getXmlBody());
+    }
+
+    @Test
+    public void getXmlBody_returnsNullWhenNoBody() throws Exception {
+        assertNull(RequestContext.of(mockRequest()).getXmlBody());
+    }
+
+    @Test
+    public void getXmlBody_rethrowsSameFailureForInvalidBody() throws Exception {
+        RequestContext context = RequestContext.of(mockRequest().body("INVALID XML"));
+
+        SAXParseException first = null;
+        try {
+            context.getXmlBody();
+            fail();
+        } catch (SAXParseException e) {
+            first = e;
+        }
+
+        try {
+            context.getXmlBody();
+            fail();
+        } catch (SAXParseException e) {
+            assertSame(first, e);
+        }
+    }
+
+    @Test
+    public void getXmlBodyFingerprint_matchesFingerprintOfParsedBody() throws Exception {
+        RequestContext context = RequestContext.of(mockRequest().body("<xml><with/></xml>"));
+
+        assertEquals(StructuralFingerprint.of(context.getXmlBody()), context.getXmlBodyFingerprint());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getXmlBodyFingerprint_throwsWhenBodyNotParsed() {
+        RequestContext.of(mockRequest().body("<xml/>")).getXmlBodyFingerprint();
+    }
+
+    @Test
+    public void evaluateStreaming_answersInOrderAndRemembersResults() {
+        RequestContext context = RequestContext.of(mockRequest().body("<xml><with/></xml>"));
+
+        assertArrayEquals(new boolean[] {true},
+                context.evaluateStreaming(Collections.singletonList(SimpleXPath.parse("/xml/with"))));
+        assertArrayEquals(new boolean[] {false, true},
+                context.evaluateStreaming(Arrays.asList(SimpleXPath.parse("/xml/none"), SimpleXPath.parse("/xml/with"))));
+    }
+
+    @Test
+    public void evaluateStreaming_returnsNullWhenBodyCannotBeStreamed() {
+        RequestContext context = RequestContext.of(mockRequest().body("INVALID XML"));
+
+        assertNull(context.evaluateStreaming(Collections.singletonList(SimpleXPath.parse("/xml"))));
+        assertNull(context.evaluateStreaming(Collections.singletonList(SimpleXPath.parse("/other"))));
+        assertNull(RequestContext.of(mockRequest()).evaluateStreaming(Collections.singletonList(SimpleXPath.parse("/xml"))));
+    }
+
+    @Test
+    public void getRootElementName_readsRootWithoutParsing() throws Exception {
+        RequestContext context = RequestContext.of(mockRequest().body("<xml><with/></xml>"));
+
+        assertEquals("xml", context.getRootElementName());
+        assertEquals("xml", context.getXmlBody().getDocumentElement().getNodeName());
+    }
+
+    @Test
+    public void getRootElementName_usesParsedBody() throws Exception {
+        RequestContext context = RequestContext.of(mockRequest().body("<xml><with/></xml>"));
+        context.getXmlBody();
+
+        assertEquals("xml", context.getRootElementName());
+    }
+
+    @Test
+    public void getRootElementName_returnsNullWhenNoBody() {
+        assertNull(RequestContext.of(mockRequest()).getRootElementName());
+        assertNull(RequestContext.of(mockRequest().body("INVALID XML")).getRootElementName());
+    }
+
+    @Test
+    public void getXmlBody_honoursEncodingDeclaration() throws Exception {
+        byte[] body = "<?xml version='1.0' encoding='ISO-8859-1'?><xml name='caf\u00e9'/>"
+                .getBytes(StandardCharsets.ISO_8859_1);
+
+        Document xmlBody = RequestContext.of(mockRequest().body(body)).getXmlBody();
+
+        assertEquals("caf\u00e9", xmlBody.getDocumentElement().getAttribute("name"));
+    }
+
+    @Test
+    public void getXmlBody_honoursContentTypeCharset() throws Exception {
+        byte[] body = "<xml name='caf\u00e9'/>".getBytes(StandardCharsets.ISO_8859_1);
+        Request request = mockRequest()
+                .withHeader("Content-Type", "application/xml; charset=ISO-8859-1")
+                .body(body);
+
+        Document xmlBody = RequestContext.of(request).getXmlBody();
+
+        assertEquals("caf\u00e9", xmlBody.getDocumentElement().getAttribute("name"));
+    }
+
+    @Test
+    public void getXmlBody_ignoresUnsupportedContentTypeCharset() throws Exception {
+        Request request = mockRequest()
+                .withHeader("Content-Type", "application/xml; charset=NOT-A-CHARSET")
+                .body("<xml/>");
+
+        assertEquals("xml", RequestContext.of(request).getXmlBody().getDocumentElement().getNodeName());
+    }
+
+    @Test
+    public void evaluateStreaming_honoursContentTypeCharset() {
+        byte[] body = "<xml name='caf\u00e9'/>".getBytes(StandardCharsets.ISO_8859_1);
+        Request request = mockRequest()
+                .withHeader("Content-Type", "application/xml; charset=ISO-8859-1")
+                .body(body);
+
+        assertArrayEquals(new boolean[] {true}, RequestContext.of(request)
+                .evaluateStreaming(Collections.singletonList(SimpleXPath.parse("/xml[@name='caf\u00e9']"))));
+    }
+}
@@ -0,0 +1,110 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.common.SingleRootFileSource;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.worldpay.gateway.tokens.wiremock.testsupport.NoFileSource.noFileSource;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link StaticResponses}.
+ */
+public class StaticResponsesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StaticResponses staticResponses = new StaticResponses();
+
+    @Test
+    public void staticFormOf_returnsResponseWithoutMarkup() {
+        ResponseDefinition response = aResponse()
+                .withHeader("Content-Type", "text/xml")
+                .withBody("<static/>")
+                .build();
+
+        assertSame(response, staticResponses.staticFormOf(response, noFileSource()));
+        assertSame(response, staticResponses.staticFormOf(response, noFileSource()));
+    }
+
+    @Test
+    public void staticFormOf_returnsNullForMarkupInBody() {
+        ResponseDefinition response = aResponse().withBody("<url>{{request.url}}</url>").build();
+
+        assertNull(staticResponses.staticFormOf(response, noFileSource()));
+    }
+
+    @Test
+    public void staticFormOf_returnsNullForMarkupInHeader() {
+        ResponseDefinition response = aResponse()
+                .withHeader("X-Static", "static")
+                .withHeader("X-Templated", "{{request.url}}")
+                .withBody("<static/>")
+                .build();
+
+        assertNull(staticResponses.staticFormOf(response, noFileSource()));
+    }
+
+    @Test
+    public void staticFormOf_returnsNullForMarkupInProxyBaseUrl() {
+        ResponseDefinition response = aResponse().proxiedFrom("{{request.headers.X-WM-Uri}}").build();
+
+        assertNull(staticResponses.staticFormOf(response, noFileSource()));
+    }
+
+    @Test
+    public void staticFormOf_inlinesStaticBodyFile() throws Exception {
+        File bodyFile = folder.newFile("response.xml");
+        FileUtils.write(bodyFile, "<static caf\u00e9=\"1\"/>", StandardCharsets.UTF_8);
+        ResponseDefinition response = aResponse().withBodyFile("response.xml").build();
+        FileSource files = new SingleRootFileSource(folder.getRoot());
+
+        ResponseDefinition first = staticResponses.staticFormOf(response, files);
+
+        assertNull(first.getBodyFileName());
+        assertArrayEquals(FileUtils.readFileToByteArray(bodyFile), first.getByteBody());
+        assertSame(first, staticResponses.staticFormOf(response, files));
+    }
+
+    @Test
+    public void staticFormOf_rereadsBodyFileWhenItChanges() throws Exception {
+        File bodyFile = folder.newFile("response.xml");
+        FileUtils.write(bodyFile, "<static/>", StandardCharsets.UTF_8);
+        ResponseDefinition response = aResponse().withBodyFile("response.xml").build();
+        FileSource files = new SingleRootFileSource(folder.getRoot());
+
+        staticResponses.staticFormOf(response, files);
+        FileUtils.write(bodyFile, "<templated>{{request.url}}</templated>", StandardCharsets.UTF_8);
+        bodyFile.setLastModified(bodyFile.lastModified() + 2000);
+
+        assertNull(staticResponses.staticFormOf(response, files));
+    }
+
+    @Test
+    public void invalidate_rereadsBodyFileEvenIfModificationTimeIsUnchanged() throws Exception {
+        File bodyFile = folder.newFile("response.xml");
+        FileUtils.write(bodyFile, "<static/>", StandardCharsets.UTF_8);
+        long lastModified = bodyFile.lastModified();
+        ResponseDefinition response = aResponse().withBodyFile("response.xml").build();
+        FileSource files = new SingleRootFileSource(folder.getRoot());
+
+        staticResponses.staticFormOf(response, files);
+        FileUtils.write(bodyFile, "<changed/>", StandardCharsets.UTF_8);
+        bodyFile.setLastModified(lastModified);
+        staticResponses.invalidate(bodyFile.toURI());
+
+        assertArrayEquals("<changed/>".getBytes(StandardCharsets.UTF_8),
+                staticResponses.staticFormOf(response, files).getByteBody());
+    }
+}
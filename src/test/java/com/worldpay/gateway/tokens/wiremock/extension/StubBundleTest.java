@@ -0,0 +1,242 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.common.SingleRootFileSource;
+import com.github.tomakehurst.wiremock.standalone.MappingsLoader;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+import com.github.tomakehurst.wiremock.stubbing.StubMappings;
+import com.worldpay.gateway.tokens.wiremock.testsupport.RecordingNotifier;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link StubBundle}.
+ */
+public class StubBundleTest {
+
+    private static final long AN_HOUR_AGO = System.currentTimeMillis() - 3_600_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSource root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = new SingleRootFileSource(folder.getRoot());
+        write("mappings/a.json", mapping("/a", "example.xml", "response.xml"));
+        write("__files/example.xml", "<example/>");
+        write("__files/response.xml", "<response>{{request.url}}</response>");
+        write("__files/unused.xml", "<unused/>");
+        // so that adding a mapping is seen as a change, however soon it happens
+        assertTrue(new File(folder.getRoot(), "mappings").setLastModified(AN_HOUR_AGO));
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(StubBundle.ENABLED_PROPERTY);
+    }
+
+    @Test
+    public void compile_readsMappingsAndTheFilesTheyUse() throws IOException {
+        StubBundle bundle = StubBundle.compile(root);
+
+        assertThat(bundle.getMappings().keySet().iterator().next(), is("mappings/a.json"));
+        assertTrue(new File(folder.getRoot(), "__files/response.xml").delete());
+        FileSource files = bundle.files(root.child("__files"));
+
+        assertThat(files.getTextFileNamed("response.xml").readContentsAsString(),
+                is("<response>{{request.url}}</response>"));
+        assertThat(files.getTextFileNamed("response.xml").getUri(),
+                is(root.child("__files").getTextFileNamed("response.xml").getUri()));
+        assertThat(new String(files.getBinaryFileNamed("example.xml").readContents(), StandardCharsets.UTF_8),
+                is("<example/>"));
+    }
+
+    @Test
+    public void read_returnsWhatWasWritten() throws IOException {
+        Path path = StubBundle.pathIn(root);
+        StubBundle.compile(root).write(path);
+
+        StubBundle bundle = StubBundle.read(path);
+
+        StubMapping stub = bundle.getMappings().get("mappings/a.json");
+        assertThat(stub.getRequest().getCustomMatcher().getParameters().get("url"), is("/a"));
+        assertThat(bundle.files(root.child("__files")).getTextFileNamed("example.xml").readContentsAsString(),
+                is("<example/>"));
+        assertTrue(bundle.isFresh(root));
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsOtherFiles() throws IOException {
+        write(StubBundle.FILE_NAME, "not a bundle");
+
+        StubBundle.read(StubBundle.pathIn(root));
+    }
+
+    @Test
+    public void isFresh_isFalseWhenAMappingChanges() throws IOException {
+        StubBundle bundle = StubBundle.compile(root);
+
+        assertTrue(new File(folder.getRoot(), "mappings/a.json").setLastModified(AN_HOUR_AGO));
+
+        assertFalse(bundle.isFresh(root));
+    }
+
+    @Test
+    public void isFresh_isFalseWhenAMappingIsAdded() throws IOException {
+        StubBundle bundle = StubBundle.compile(root);
+
+        write("mappings/b.json", mapping("/b", "example.xml", "response.xml"));
+
+        assertFalse(bundle.isFresh(root));
+    }
+
+    @Test
+    public void isFresh_isFalseWhenAFileInUseChanges() throws IOException {
+        StubBundle bundle = StubBundle.compile(root);
+
+        write("__files/unused.xml", "<changed/>");
+        assertTrue(bundle.isFresh(root));
+
+        write("__files/example.xml", "<changed/>");
+        // the same size, so only its time shows the change
+        assertTrue(new File(folder.getRoot(), "__files/example.xml").setLastModified(AN_HOUR_AGO));
+        assertFalse(bundle.isFresh(root));
+    }
+
+    @Test
+    public void load_writesBundleAndUsesItWhileItIsFresh() throws IOException {
+        RecordingNotifier notifier = new RecordingNotifier();
+
+        StubBundle.load(root, notifier);
+        StubBundle.load(root, notifier);
+
+        assertThat(notifier.info.get(0), containsString("Compiled 1 mappings into"));
+        assertThat(notifier.info.get(1), containsString("Loading 1 mappings from"));
+        assertTrue(Files.exists(StubBundle.pathIn(root)));
+    }
+
+    @Test
+    public void load_readsFilesWhenBundleIsStale() throws IOException {
+        RecordingNotifier notifier = new RecordingNotifier();
+        StubBundle.load(root, notifier);
+        write("mappings/b.json", mapping("/b", "example.xml", "response.xml"));
+
+        StubBundle bundle = StubBundle.load(root, notifier);
+
+        assertThat(notifier.info.get(1), containsString("is out of date"));
+        assertThat(bundle.getMappings().size(), is(2));
+        assertTrue(StubBundle.read(StubBundle.pathIn(root)).isFresh(root));
+    }
+
+    @Test
+    public void getMappings_failsOnUnreadableMapping() throws IOException {
+        write("mappings/broken.json", "{ not json");
+        StubBundle bundle = StubBundle.loose(root);
+
+        try {
+            bundle.getMappings();
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("mappings/broken.json: mapping can't be read"));
+        }
+    }
+
+    @Test
+    public void mappingsLoader_loadsBundledStubsOnceThenReadsFiles() throws IOException {
+        StubBundle bundle = StubBundle.compile(root);
+        MappingsLoader loader = bundle.mappingsLoader(root);
+        StubMappings first = mock(StubMappings.class);
+        StubMappings second = mock(StubMappings.class);
+
+        loader.loadMappingsInto(first);
+        loader.loadMappingsInto(second);
+
+        StubMapping bundled = bundle.getMappings().get("mappings/a.json");
+        verify(first).addMapping(bundled);
+        ArgumentCaptor<StubMapping> reread = ArgumentCaptor.forClass(StubMapping.class);
+        verify(second, times(1)).addMapping(reread.capture());
+        assertThat(reread.getValue(), is(not(sameInstance(bundled))));
+        assertThat(bundle.served().get("mappings/a.json"), is(sameInstance(reread.getValue())));
+    }
+
+    @Test
+    public void mappingsSaver_removesStubsOwnFile() throws IOException {
+        StubBundle bundle = StubBundle.compile(root);
+        bundle.mappingsLoader(root).loadMappingsInto(mock(StubMappings.class));
+        StubMapping stub = bundle.served().get("mappings/a.json");
+
+        bundle.mappingsSaver(root).remove(stub);
+
+        assertFalse(new File(folder.getRoot(), "mappings/a.json").exists());
+        assertTrue(bundle.served().isEmpty());
+    }
+
+    @Test
+    public void mappingsSaver_savesNewStubIntoNewFile() throws IOException {
+        StubBundle bundle = StubBundle.compile(root);
+        StubMapping stub = StubMapping.buildFrom(mapping("/b", "example.xml", "response.xml"));
+
+        bundle.mappingsSaver(root).save(stub);
+
+        String name = bundle.served().keySet().iterator().next();
+        assertThat(name, startsWith("mappings/saved-mapping-"));
+        String saved = FileUtils.readFileToString(new File(folder.getRoot(), name), StandardCharsets.UTF_8);
+        assertThat(StubMapping.buildFrom(saved).getUuid(), is(stub.getUuid()));
+    }
+
+    @Test
+    public void loose_readsMappingsButNotFiles() throws IOException {
+        StubBundle bundle = StubBundle.loose(root);
+
+        assertThat(bundle.getMappings().size(), is(1));
+        assertTrue(bundle.served().isEmpty());
+        write("__files/example.xml", "<changed/>");
+        assertThat(bundle.files(root.child("__files")).getTextFileNamed("example.xml").readContentsAsString(),
+                is("<changed/>"));
+    }
+
+    @Test
+    public void isEnabled_onlyWhenTurnedOn() {
+        assertFalse(StubBundle.isEnabled());
+
+        System.setProperty(StubBundle.ENABLED_PROPERTY, "true");
+
+        assertTrue(StubBundle.isEnabled());
+    }
+
+    private void write(String name, String contents) throws IOException {
+        FileUtils.writeStringToFile(new File(folder.getRoot(), name), contents, StandardCharsets.UTF_8);
+    }
+
+    private static String mapping(String url, String xmlLikeFile, String bodyFileName) {
+        return "{\"request\": {\"customMatcher\": {\"name\": \"wpgMatcher\", \"parameters\": {"
+                + "\"method\": \"POST\", \"url\": \"" + url + "\", \"xmlLikeFile\": \"" + xmlLikeFile + "\"}}}, "
+                + "\"response\": {\"status\": 200, \"bodyFileName\": \"" + bodyFileName + "\"}}";
+    }
+}
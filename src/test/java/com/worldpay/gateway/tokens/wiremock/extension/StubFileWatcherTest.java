@@ -0,0 +1,267 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.common.Json;
+import com.github.tomakehurst.wiremock.common.SingleRootFileSource;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.standalone.MappingsLoader;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+import com.worldpay.gateway.tokens.wiremock.testsupport.RecordingNotifier;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link StubFileWatcher}.
+ */
+public class StubFileWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final RecordingNotifier notifier = new RecordingNotifier();
+
+    private WireMockServer server;
+    private StubBundle bundle;
+    private StubFileWatcher watcher;
+
+    @Before
+    public void setUp() throws IOException {
+        write("mappings/a.json", mapping("/a", "\"body\": \"<a/>\""));
+        write("mappings/file.json", mapping("/file", "\"bodyFileName\": \"file.xml\""));
+        write("__files/file.xml", "<file url=\"{{request.url}}\" version=\"1\"/>");
+
+        FileSource root = new SingleRootFileSource(folder.getRoot());
+        // loaded as the runner loads them, so the watcher knows which stub came from which file
+        bundle = StubBundle.loose(root);
+        MappingsLoader loader = bundle.mappingsLoader(root);
+        server = new WireMockServer(new WireMockConfiguration() {
+            @Override
+            public MappingsLoader mappingsLoader() {
+                return loader;
+            }
+        }
+                .dynamicPort()
+                .usingFilesUnderDirectory(folder.getRoot().getPath())
+                .extensions(new WpgRequestMatcher(root), new WpgResponseTemplateTransformer()));
+        server.start();
+
+        watcher = StubFileWatcher.create(root, server, notifier, bundle, false);
+    }
+
+    @After
+    public void tearDown() {
+        watcher.close();
+        server.stop();
+        System.clearProperty(StubFileWatcher.ENABLED_PROPERTY);
+    }
+
+    @Test
+    public void changed_replacesEditedStubKeepingItsId() throws IOException {
+        StubMapping before = stubFor("/a");
+        write("mappings/a.json", mapping("/a", "\"body\": \"<edited/>\""));
+
+        watcher.changed(path("mappings/a.json"));
+
+        assertThat(post("/a"), is("<edited/>"));
+        assertThat(stubFor("/a").getUuid(), is(before.getUuid()));
+        assertThat(server.listAllStubMappings().getMappings().size(), is(2));
+        assertTrue(notifier.errors.isEmpty());
+    }
+
+    @Test
+    public void changed_addsAndRemovesMappings() throws IOException {
+        write("mappings/nested/b.json", mapping("/b", "\"body\": \"<b/>\""));
+
+        watcher.changed(path("mappings/nested/b.json"));
+
+        assertThat(post("/b"), is("<b/>"));
+        assertThat(server.listAllStubMappings().getMappings().size(), is(3));
+
+        assertTrue(new File(folder.getRoot(), "mappings/nested/b.json").delete());
+        watcher.changed(path("mappings/nested/b.json"));
+
+        assertThat(server.listAllStubMappings().getMappings().size(), is(2));
+        assertThat(post("/a"), is("<a/>"));
+    }
+
+    @Test
+    public void changed_keepsServingStubEqualToEditedOne() throws IOException {
+        write("mappings/copy.json", mapping("/a", "\"body\": \"<a/>\""));
+        server.resetToDefaultMappings();
+        assertThat(server.listAllStubMappings().getMappings().size(), is(3));
+
+        write("mappings/copy.json", mapping("/copy", "\"body\": \"<copy/>\""));
+        watcher.changed(path("mappings/copy.json"));
+
+        assertThat(post("/a"), is("<a/>"));
+        assertThat(post("/copy"), is("<copy/>"));
+        assertThat(server.listAllStubMappings().getMappings().size(), is(3));
+    }
+
+    @Test
+    public void changed_addsStubAgainAfterReset() throws IOException {
+        server.resetMappings();
+        write("mappings/a.json", mapping("/a", "\"body\": \"<edited/>\""));
+
+        watcher.changed(path("mappings/a.json"));
+
+        assertThat(post("/a"), is("<edited/>"));
+        assertThat(server.listAllStubMappings().getMappings().size(), is(1));
+    }
+
+    @Test
+    public void changed_leavesMappingSavedByWireMock() throws IOException {
+        StubMapping saved = stubFor("/a");
+        write("mappings/saved.json", Json.write(saved));
+
+        watcher.changed(path("mappings/saved.json"));
+
+        assertThat(server.listAllStubMappings().getMappings().size(), is(2));
+        assertTrue(notifier.info.isEmpty());
+
+        write("mappings/saved.json", Json.write(saved).replace("<a/>", "<saved/>"));
+        watcher.changed(path("mappings/saved.json"));
+
+        assertThat(post("/a"), is("<saved/>"));
+        assertThat(stubFor("/a").getUuid(), is(saved.getUuid()));
+        assertThat(server.listAllStubMappings().getMappings().size(), is(2));
+    }
+
+    @Test
+    public void changed_leavesNewMappingsWhileRecording() throws IOException {
+        watcher.close();
+        watcher = StubFileWatcher.create(new SingleRootFileSource(folder.getRoot()), server, notifier, bundle, true);
+        write("mappings/mapping-b.json", mapping("/b", "\"body\": \"<b/>\""));
+        write("mappings/a.json", mapping("/a", "\"body\": \"<edited/>\""));
+
+        watcher.changed(path("mappings/mapping-b.json"));
+        watcher.changed(path("mappings/a.json"));
+
+        assertThat(server.listAllStubMappings().getMappings().size(), is(2));
+        assertThat(post("/a"), is("<edited/>"));
+    }
+
+    @Test
+    public void changed_keepsPreviousVersionOfUnreadableMapping() throws IOException {
+        write("mappings/a.json", "{ \"request\": ");
+
+        watcher.changed(path("mappings/a.json"));
+
+        assertThat(post("/a"), is("<a/>"));
+        assertThat(notifier.errors.get(0), containsString("mappings/a.json: mapping can't be read"));
+    }
+
+    @Test
+    public void changed_reportsProblemsWithEditedStub() throws IOException {
+        write("mappings/a.json", mapping("/a", "\"body\": \"{{#if}}\""));
+
+        watcher.changed(path("mappings/a.json"));
+
+        assertThat(notifier.errors.get(0), containsString("mappings/a.json: response template can't be compiled"));
+    }
+
+    @Test
+    public void changed_dropsCachedFormsOfBodyFile() throws IOException {
+        assertThat(post("/file"), is("<file url=\"/file\" version=\"1\"/>"));
+
+        // an edit within the file system's timestamp granularity isn't seen by the caches alone
+        File bodyFile = new File(folder.getRoot(), "__files/file.xml");
+        long lastModified = bodyFile.lastModified();
+        write("__files/file.xml", "<file url=\"{{request.url}}\" version=\"2\"/>");
+        assertTrue(bodyFile.setLastModified(lastModified));
+
+        watcher.changed(path("__files/file.xml"));
+
+        assertThat(post("/file"), is("<file url=\"/file\" version=\"2\"/>"));
+    }
+
+    @Test
+    public void start_reloadsChangedMappingsInTheBackground() throws Exception {
+        watcher.close();
+        watcher = StubFileWatcher.start(new SingleRootFileSource(folder.getRoot()), server, notifier, bundle,
+                false);
+
+        write("mappings/a.json", mapping("/a", "\"body\": \"<watched/>\""));
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!post("/a").equals("<watched/>") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        assertThat(post("/a"), is("<watched/>"));
+    }
+
+    @Test
+    public void isEnabled_unlessTurnedOff() {
+        assertTrue(StubFileWatcher.isEnabled());
+
+        System.setProperty(StubFileWatcher.ENABLED_PROPERTY, "false");
+
+        assertFalse(StubFileWatcher.isEnabled());
+    }
+
+    private StubMapping stubFor(String url) {
+        List<StubMapping> stubs = server.listAllStubMappings().getMappings();
+        for (StubMapping stub : stubs) {
+            if (url.equals(stub.getRequest().getCustomMatcher().getParameters().get("url"))) {
+                return stub;
+            }
+        }
+
+        throw new AssertionError("no stub for " + url);
+    }
+
+    private Path path(String name) {
+        return folder.getRoot().toPath().toAbsolutePath().normalize().resolve(name);
+    }
+
+    private void write(String name, String contents) throws IOException {
+        FileUtils.writeStringToFile(new File(folder.getRoot(), name), contents, StandardCharsets.UTF_8);
+    }
+
+    private String post(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://localhost:" + server.port() + url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write("<request/>".getBytes(StandardCharsets.UTF_8));
+        }
+
+        if (connection.getResponseCode() != 200) {
+            return "HTTP " + connection.getResponseCode();
+        }
+
+        try (InputStream in = connection.getInputStream()) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String mapping(String url, String response) {
+        return "{\"request\": {\"customMatcher\": {\"name\": \"wpgMatcher\", \"parameters\": {"
+                + "\"method\": \"POST\", \"url\": \"" + url + "\"}}}, "
+                + "\"response\": {\"status\": 200, " + response + "}}";
+    }
+}
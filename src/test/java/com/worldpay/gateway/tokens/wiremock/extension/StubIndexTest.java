@@ -0,0 +1,182 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.worldpay.gateway.tokens.wiremock.testsupport.MockRequest.mockRequest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link StubIndex}.
+ */
+public class StubIndexTest {
+
+    private StubIndex index = new StubIndex();
+
+    @Test
+    public void isCandidate_acceptsStubWithMatchingMethodAndUrl() {
+        Parameters parameters = stub("POST", "/test");
+
+        assertTrue(index.isCandidate(mockRequest().method(RequestMethod.POST).url("/test"), parameters));
+    }
+
+    @Test
+    public void isCandidate_rejectsStubWithDifferentMethod() {
+        Parameters parameters = stub("GET", "/test");
+
+        assertFalse(index.isCandidate(mockRequest().method(RequestMethod.POST).url("/test"), parameters));
+    }
+
+    @Test
+    public void isCandidate_rejectsStubWithDifferentUrl() {
+        Parameters parameters = stub("POST", "/other");
+
+        assertFalse(index.isCandidate(mockRequest().method(RequestMethod.POST).url("/test"), parameters));
+    }
+
+    @Test
+    public void isCandidate_acceptsAnyRequestForStubWithoutConstraints() {
+        assertTrue(index.isCandidate(mockRequest().method(RequestMethod.PUT).url("/any"), Parameters.empty()));
+    }
+
+    @Test
+    public void isCandidate_rejectsStubWithUnsupportedParameter() {
+        Parameters parameters = Parameters.one("unsupported", "value");
+
+        assertFalse(index.isCandidate(mockRequest(), parameters));
+    }
+
+    @Test
+    public void isCandidate_rejectsStubWithDifferentXpathRoot() {
+        Parameters parameters = Parameters.one("xpath", Collections.singletonList("/some/of[@and='fixed']"));
+
+        assertFalse(index.isCandidate(mockRequest().body("<other><of and='fixed'/></other>"), parameters));
+        assertTrue(index.isCandidate(mockRequest().body("<some><of and='fixed'/></some>"), parameters));
+    }
+
+    @Test
+    public void isCandidate_rejectsStubWithDifferentXmlLikeRoot() {
+        Parameters parameters = Parameters.one("xmlLike", "<some><kind/></some>");
+
+        assertFalse(index.isCandidate(mockRequest().body("<other><kind/></other>"), parameters));
+        assertTrue(index.isCandidate(mockRequest().body("<some><kind/></some>"), parameters));
+    }
+
+    @Test
+    public void isCandidate_treatsComplexXpathAsAnyRoot() {
+        Parameters parameters = Parameters.one("xpath", Collections.singletonList("//of | /other"));
+
+        assertTrue(index.isCandidate(mockRequest().body("<some><of/></some>"), parameters));
+    }
+
+    @Test
+    public void isCandidate_rejectsStubRequiringRootWhenBodyIsNotXml() {
+        Parameters parameters = Parameters.one("xpath", Collections.singletonList("/some"));
+
+        assertFalse(index.isCandidate(mockRequest().body("NOT XML"), parameters));
+    }
+
+    @Test
+    public void isCandidate_seesStubsIndexedDuringSameRequest() {
+        Parameters first = stub("POST", "/first");
+        Parameters second = stub("POST", "/test");
+        Request request = mockRequest().method(RequestMethod.POST).url("/test");
+
+        assertFalse(index.isCandidate(request, first));
+        assertTrue(index.isCandidate(request, second));
+    }
+
+    @Test
+    public void isCandidate_seesRootKeyedStubIndexedByAnotherRequest() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (int i = 0; i < 10_000; i++) {
+                StubIndex index = new StubIndex();
+                Parameters plain = stub("POST", "/test");
+                Parameters rooted = Parameters.one("xpath", Collections.singletonList("/some"));
+                Request request = mockRequest().method(RequestMethod.POST).url("/test").body("<some/>");
+                index.isCandidate(request, plain);
+
+                CountDownLatch started = new CountDownLatch(1);
+                Future<Boolean> other = executor.submit(() -> {
+                    started.countDown();
+                    return index.isCandidate(mockRequest(), rooted);
+                });
+                started.await();
+                while (!other.isDone()) {
+                    index.isCandidate(request, plain);
+                }
+                other.get();
+
+                assertTrue("iteration " + i, index.isCandidate(request, rooted));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void stubsWithSameRouteShareBucket() {
+        index.isCandidate(mockRequest(), stub("POST", "/test"));
+        index.isCandidate(mockRequest(), stub("POST", "/test"));
+
+        assertEquals(1, index.bucketCount());
+    }
+
+    @Test
+    public void remove_keepsEqualStubACandidateThroughout() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (int i = 0; i < 10_000; i++) {
+                StubIndex index = new StubIndex();
+                Parameters removed = stub("POST", "/test");
+                Parameters equal = stub("POST", "/test");
+                Request request = mockRequest().method(RequestMethod.POST).url("/test");
+                index.isCandidate(request, removed);
+                index.isCandidate(request, equal);
+
+                CountDownLatch started = new CountDownLatch(1);
+                Future<?> other = executor.submit(() -> {
+                    started.countDown();
+                    index.remove(removed);
+                });
+                started.await();
+                while (!other.isDone()) {
+                    assertTrue("iteration " + i, index.isCandidate(request, equal));
+                }
+                other.get();
+
+                assertTrue("iteration " + i, index.isCandidate(request, equal));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void remove_indexesStubAgainWhenNextSeen() {
+        Parameters parameters = stub("POST", "/test");
+        index.isCandidate(mockRequest(), parameters);
+
+        index.remove(parameters);
+
+        assertTrue(index.isCandidate(mockRequest().method(RequestMethod.POST).url("/test"), parameters));
+    }
+
+    private Parameters stub(String method, String url) {
+        Parameters parameters = new Parameters();
+        parameters.put("method", method);
+        parameters.put("url", url);
+        return parameters;
+    }
+}
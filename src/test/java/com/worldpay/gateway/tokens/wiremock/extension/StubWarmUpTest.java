@@ -0,0 +1,121 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.common.SingleRootFileSource;
+import com.worldpay.gateway.tokens.wiremock.testsupport.RecordingNotifier;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link StubWarmUp}.
+ */
+public class StubWarmUpTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        System.clearProperty(StubWarmUp.REQUESTS_PROPERTY);
+    }
+
+    @Test
+    public void precompile_reportsNothingForValidStubs() throws IOException {
+        write("__files/example.xml", "<some><of><and another=\"fixed\"/></of></some>");
+        write("__files/response.xml", "<url>{{request.url}}</url>");
+        write("mappings/valid.json", mapping(
+                "\"xpath\": [\"/some/of/and[@another='fixed']\"], \"xmlLikeFile\": \"example.xml\"",
+                "\"bodyFileName\": \"response.xml\""));
+        write("mappings/plain.json", "{\"request\": {\"url\": \"/plain\"}, \"response\": {\"body\": \"<plain/>\"}}");
+        write("mappings/notes.txt", "not a mapping");
+
+        StubWarmUp warmUp = StubWarmUp.load(root());
+
+        assertThat(warmUp.size(), is(2));
+        assertTrue(warmUp.precompile().isEmpty());
+    }
+
+    @Test
+    public void precompile_reportsInvalidStubs() throws IOException {
+        write("mappings/xpath.json", mapping("\"xpath\": [\"/some[\"]", "\"body\": \"<ok/>\""));
+        write("mappings/xmlLike.json", mapping("\"xmlLike\": \"<unclosed>\"", "\"body\": \"<ok/>\""));
+        write("mappings/missing.json", mapping("\"xmlLikeFile\": \"missing.xml\"", "\"body\": \"<ok/>\""));
+        write("mappings/template.json", mapping("\"url\": \"/template\"", "\"body\": \"{{#if}}\""));
+        write("mappings/unreadable.json", "{ not json");
+
+        String problems = String.join("\n", StubWarmUp.load(root()).precompile());
+
+        assertThat(problems, containsString("mappings/xpath.json: invalid xpath /some["));
+        assertThat(problems, containsString("mappings/xmlLike.json: xmlLike is not well-formed XML"));
+        assertThat(problems, containsString("mappings/missing.json: xmlLikeFile missing.xml can't be read"));
+        assertThat(problems, containsString("mappings/template.json: response template can't be compiled"));
+        assertThat(problems, containsString("mappings/unreadable.json: mapping can't be read"));
+    }
+
+    @Test
+    public void warmUp_sendsRequestsMadeUpFromStubs() throws IOException {
+        write("mappings/xpath.json", mapping("\"xpath\": [\"/some/of/and[@another='fixed']\"]",
+                "\"body\": \"<url>{{request.url}}</url>\""));
+        write("mappings/xmlLike.json", mapping("\"xmlLike\": \"<other/>\"", "\"body\": \"<ok/>\""));
+
+        assertThat(StubWarmUp.load(root()).warmUp(10), is(10));
+    }
+
+    @Test
+    public void warmUp_sendsNothingWithoutMatcherStubs() throws IOException {
+        write("mappings/plain.json", "{\"request\": {\"url\": \"/plain\"}, \"response\": {\"body\": \"<plain/>\"}}");
+
+        assertThat(StubWarmUp.load(root()).warmUp(10), is(0));
+        assertThat(StubWarmUp.load(new SingleRootFileSource(folder.newFolder("empty"))).size(), is(0));
+    }
+
+    @Test
+    public void run_reportsProblemsAndSummary() throws IOException {
+        write("mappings/xpath.json", mapping("\"xpath\": [\"/some[\"]", "\"body\": \"<ok/>\""));
+        write("mappings/valid.json", mapping("\"xmlLike\": \"<other/>\"", "\"body\": \"<ok/>\""));
+        System.setProperty(StubWarmUp.REQUESTS_PROPERTY, "5");
+        RecordingNotifier notifier = new RecordingNotifier();
+
+        StubWarmUp.run(root(), notifier);
+
+        assertEquals(1, notifier.errors.size());
+        assertThat(notifier.errors.get(0), containsString("invalid xpath"));
+        assertThat(notifier.info.get(0), containsString("Precompiled 2 stubs and warmed up with 5 requests"));
+    }
+
+    @Test
+    public void requestsFromSystemProperties_defaultsWhenUnset() {
+        assertThat(StubWarmUp.requestsFromSystemProperties(), is(StubWarmUp.DEFAULT_REQUESTS));
+
+        System.setProperty(StubWarmUp.REQUESTS_PROPERTY, " 0 ");
+
+        assertThat(StubWarmUp.requestsFromSystemProperties(), is(0));
+    }
+
+    private FileSource root() {
+        return new SingleRootFileSource(folder.getRoot());
+    }
+
+    private void write(String path, String contents) throws IOException {
+        FileUtils.writeStringToFile(new File(folder.getRoot(), path), contents, StandardCharsets.UTF_8);
+    }
+
+    private static String mapping(String matcherParameters, String response) {
+        return "{\"request\": {\"customMatcher\": {\"name\": \"wpgMatcher\", \"parameters\": {"
+                + "\"method\": \"POST\", " + matcherParameters + "}}}, "
+                + "\"response\": {" + response + "}}";
+    }
+}
@@ -0,0 +1,103 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.jknack.handlebars.Handlebars;
+import com.github.jknack.handlebars.HandlebarsException;
+import com.github.jknack.handlebars.Template;
+import com.github.tomakehurst.wiremock.common.TextFile;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link TemplateCache}.
+ */
+public class TemplateCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TemplateCache cache = new TemplateCache(new Handlebars());
+
+    @Test
+    public void compileInline_returnsSameTemplateForSameContent() throws Exception {
+        Template first = cache.compileInline("Hello {{name}}");
+
+        assertSame(first, cache.compileInline("Hello {{name}}"));
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    public void compileInline_compilesDifferentContentSeparately() throws Exception {
+        assertNotSame(cache.compileInline("Hello {{name}}"), cache.compileInline("Goodbye {{name}}"));
+    }
+
+    @Test(expected = HandlebarsException.class)
+    public void compileInline_throwsForBrokenTemplate() throws Exception {
+        cache.compileInline("{{#if}}never closed");
+    }
+
+    @Test
+    public void compileFile_returnsSameTemplateWhileFileUnchanged() throws Exception {
+        TextFile file = textFile("response.xml", "<here>{{name}}</here>");
+
+        Template first = cache.compileFile(file);
+
+        assertSame(first, cache.compileFile(file));
+    }
+
+    @Test
+    public void compileFile_recompilesWhenFileChanges() throws Exception {
+        TextFile file = textFile("response.xml", "<here>{{name}}</here>");
+        Template first = cache.compileFile(file);
+
+        File onDisk = new File(file.getUri());
+        FileUtils.write(onDisk, "<changed>{{name}}</changed>", StandardCharsets.UTF_8);
+        assertTrue(onDisk.setLastModified(onDisk.lastModified() + 10_000));
+
+        Template second = cache.compileFile(file);
+
+        assertNotSame(first, second);
+        assertEquals("<changed>{{name}}</changed>", second.text());
+    }
+
+    @Test
+    public void invalidate_dropsOnlyThatFile() throws Exception {
+        TextFile file = textFile("response.xml", "<here>{{name}}</here>");
+        TextFile other = textFile("other.xml", "<there>{{name}}</there>");
+        Template first = cache.compileFile(file);
+        Template otherFirst = cache.compileFile(other);
+
+        cache.invalidate(new File(folder.getRoot(), "./response.xml").toURI());
+
+        assertNotSame(first, cache.compileFile(file));
+        assertSame(otherFirst, cache.compileFile(other));
+    }
+
+    @Test
+    public void cacheIsBoundedInSize() throws Exception {
+        TemplateCache small = new TemplateCache(new Handlebars(), 2);
+
+        for (int i = 0; i < 10; i++) {
+            small.compileInline("template " + i);
+        }
+
+        assertTrue(small.size() <= 2);
+        assertTrue(small.stats().evictionCount() > 0);
+    }
+
+    private TextFile textFile(String name, String contents) throws Exception {
+        File file = folder.newFile(name);
+        FileUtils.write(file, contents, StandardCharsets.UTF_8);
+        return new TextFile(file.toURI());
+    }
+}
@@ -0,0 +1,62 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.Metrics;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link WpgMetricsEndpoint}.
+ */
+public class WpgMetricsEndpointTest {
+
+    private WireMockServer server;
+
+    @Before
+    public void setUp() {
+        server = new WireMockServer(wireMockConfig()
+                .dynamicPort()
+                .extensions(new WpgMetricsEndpoint()));
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void getName_returnsCorrectName() {
+        assertThat(new WpgMetricsEndpoint().getName(), is("wpg-metrics"));
+    }
+
+    @Test
+    public void metricsAreServedFromAdminApi() throws Exception {
+        Metrics.shared().counter("wpg_endpoint_test_total", "Counted by the endpoint test.").increment();
+
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://localhost:" + server.port() + "/__admin" + WpgMetricsEndpoint.PATH).openConnection();
+        String body;
+        try (InputStream in = connection.getInputStream()) {
+            body = IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+
+        assertThat(connection.getResponseCode(), is(200));
+        assertThat(connection.getContentType(), is(WpgMetricsEndpoint.CONTENT_TYPE));
+        assertThat(body, containsString("wpg_endpoint_test_total 1\n"));
+        assertThat(body, containsString("wpg_cache_requests_total{cache=\"xpath\",result=\"hit\"}"));
+        assertThat(body, containsString("wpg_cache_evictions_total{cache=\"headers\"}"));
+    }
+}
@@ -4,12 +4,17 @@ import com.github.tomakehurst.wiremock.extension.Parameters;
 import com.github.tomakehurst.wiremock.http.Request;
 import com.github.tomakehurst.wiremock.http.RequestMethod;
 import com.github.tomakehurst.wiremock.matching.MatchResult;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.Counter;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.Metrics;
+import com.worldpay.gateway.tokens.wiremock.extension.matchers.MatchPlan;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import static com.worldpay.gateway.tokens.wiremock.testsupport.MockRequest.mockRequest;
 import static org.junit.Assert.assertEquals;
@@ -28,6 +33,11 @@ public class WpgRequestMatcherTest {
         matcher = new WpgRequestMatcher();
     }
 
+    @After
+    public void tearDown() {
+        System.clearProperty(MatchPlan.PER_STUB_METRICS_PROPERTY);
+    }
+
     @Test
     public void match_returnsNoMatchWhenInvalidParameterIncluded() {
         Parameters parameters = new Parameters();
@@ -113,6 +123,101 @@ public class WpgRequestMatcherTest {
         assertFalse(actual.isExactMatch());
     }
 
+    @Test
+    public void match_countsAttemptsAndMatches() {
+        Parameters parameters = Parameters.one("url", "/a/counted/url.html");
+
+        Counter attempts = Metrics.shared().counter("wpg_stub_match_attempts_total", "");
+        Counter matches = Metrics.shared().counter("wpg_stub_matches_total", "");
+        long attemptsBefore = attempts.get();
+        long matchesBefore = matches.get();
+
+        matcher.match(mockRequest().url("/a/counted/url.html"), parameters);
+        matcher.match(mockRequest().url("/another/url.html"), parameters);
+
+        assertEquals(2, attempts.get() - attemptsBefore);
+        assertEquals(1, matches.get() - matchesBefore);
+    }
+
+    @Test
+    public void match_countsAttemptsAndMatchesForStubWhenAskedTo() {
+        System.setProperty(MatchPlan.PER_STUB_METRICS_PROPERTY, "true");
+        Parameters parameters = new Parameters();
+        parameters.put("xpath", Collections.singletonList("/counted[@stub='yes']"));
+        parameters.put("url", "/a/counted/url.html");
+        parameters.put("method", "POST");
+
+        Counter attempts = Metrics.shared().counter("wpg_stub_match_attempts_total", "",
+                "stub", "POST /a/counted/url.html xpath=[/counted[@stub='yes']]");
+        Counter matches = Metrics.shared().counter("wpg_stub_matches_total", "",
+                "stub", "POST /a/counted/url.html xpath=[/counted[@stub='yes']]");
+        long attemptsBefore = attempts.get();
+        long matchesBefore = matches.get();
+
+        matcher.match(mockRequest().body("<counted stub='yes'/>").url("/a/counted/url.html")
+                .method(RequestMethod.POST), parameters);
+        matcher.match(mockRequest().body("<counted stub='no'/>").url("/a/counted/url.html")
+                .method(RequestMethod.POST), parameters);
+        matcher.match(mockRequest().body("<counted stub='yes'/>").url("/another/url.html")
+                .method(RequestMethod.POST), parameters);
+
+        assertEquals(3, attempts.get() - attemptsBefore);
+        assertEquals(1, matches.get() - matchesBefore);
+    }
+
+    @Test
+    public void match_recordsStagesOfTracedRequest() {
+        Parameters rejectedByXpath = new Parameters();
+        rejectedByXpath.put("xpath", Collections.singletonList("/traced[@stub='no']"));
+        rejectedByXpath.put("method", "POST");
+        Parameters rejectedByMethod = Parameters.one("method", "GET");
+        Parameters matching = Parameters.one("xmlLike", "<traced stub=''/>");
+
+        Request request = mockRequest()
+                .body("<traced stub='yes'/>")
+                .method(RequestMethod.POST)
+                .withHeader(MatchTraces.TRACE_HEADER, "match_recordsStagesOfTracedRequest");
+        assertFalse(matcher.match(request, rejectedByXpath).isExactMatch());
+        assertFalse(matcher.match(request, rejectedByMethod).isExactMatch());
+        assertTrue(matcher.match(request, matching).isExactMatch());
+
+        MatchTrace trace = MatchTraces.shared().get("match_recordsStagesOfTracedRequest");
+        assertEquals(3, trace.getStubs().size());
+        assertEquals(1, trace.getStreamingPasses());
+        assertTrue(trace.getParseNanos() != null);
+
+        MatchTrace.StubTrace first = trace.getStubs().get(0);
+        assertEquals("POST * xpath=[/traced[@stub='no']]", first.getStub());
+        assertTrue(first.isCandidate());
+        assertEquals("xpath", first.getRejectedBy());
+        assertEquals("[parameters, method, body, xpath]", stageNames(first));
+
+        MatchTrace.StubTrace second = trace.getStubs().get(1);
+        assertFalse(second.isCandidate());
+        assertEquals("method", second.getRejectedBy());
+        assertEquals("[parameters, method]", stageNames(second));
+
+        MatchTrace.StubTrace third = trace.getStubs().get(2);
+        assertTrue(third.isMatched());
+        assertEquals(null, third.getRejectedBy());
+        assertEquals("[parameters, body, xmlLike]", stageNames(third));
+    }
+
+    @Test
+    public void match_recordsInvalidParametersOfTracedRequest() {
+        Request request = mockRequest().withHeader(MatchTraces.TRACE_HEADER, "match_recordsInvalidParameters");
+
+        matcher.match(request, Parameters.one("unsupported", "value"));
+
+        MatchTrace.StubTrace stub = MatchTraces.shared().get("match_recordsInvalidParameters").getStubs().get(0);
+        assertEquals("parameters", stub.getRejectedBy());
+        assertFalse(stub.isCandidate());
+    }
+
+    private static String stageNames(MatchTrace.StubTrace stub) {
+        return stub.getStages().stream().map(MatchTrace.Stage::getName).collect(Collectors.toList()).toString();
+    }
+
     @Test
     public void getName_returnsCorrectName() {
         assertEquals("wpgMatcher", matcher.getName());
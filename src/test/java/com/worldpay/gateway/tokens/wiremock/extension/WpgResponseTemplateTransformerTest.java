@@ -2,19 +2,31 @@ package com.worldpay.gateway.tokens.wiremock.extension;
 
 import com.github.jknack.handlebars.Helper;
 import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.common.SingleRootFileSource;
 import com.github.tomakehurst.wiremock.extension.Parameters;
 import com.github.tomakehurst.wiremock.http.Request;
 import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.LatencyHistogram;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.Metrics;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.worldpay.gateway.tokens.wiremock.testsupport.MockRequest.mockRequest;
 import static com.worldpay.gateway.tokens.wiremock.testsupport.NoFileSource.noFileSource;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -24,11 +36,14 @@ import static org.junit.Assert.assertTrue;
  */
 public class WpgResponseTemplateTransformerTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private WpgResponseTemplateTransformer transformer;
 
     @Before
     public void setup() {
-        transformer = new WpgResponseTemplateTransformer();
+        transformer = new WpgResponseTemplateTransformer(Collections.emptyMap());
     }
 
     @Test
@@ -252,6 +267,110 @@ public class WpgResponseTemplateTransformerTest {
         ));
     }
 
+    @Test
+    public void bodyFileTemplateIsCompiledOnce() throws Exception {
+        File bodyFile = folder.newFile("response.xml");
+        FileUtils.write(bodyFile, "<here is=\"{{request.path.[0]}}\"/>", StandardCharsets.UTF_8);
+        ResponseDefinition responseDefinition = aResponse().withBodyFile("response.xml").build();
+        FileSource files = new SingleRootFileSource(folder.getRoot());
+
+        transformer.transform(mockRequest().url("/first"), responseDefinition, files, Parameters.empty());
+        ResponseDefinition transformedResponseDef =
+                transformer.transform(mockRequest().url("/second"), responseDefinition, files, Parameters.empty());
+
+        assertThat(transformedResponseDef.getBody(), is("<here is=\"second\"/>"));
+        assertThat(transformer.getTemplateCacheStats().missCount(), is(1L));
+        assertThat(transformer.getTemplateCacheStats().hitCount(), is(1L));
+    }
+
+    @Test
+    public void renderingIsTimed() {
+        LatencyHistogram renderTime = Metrics.shared()
+                .histogram("wpg_template_render_duration_seconds", "");
+        long before = renderTime.count();
+
+        transform(mockRequest().url("/timed"), aResponse()
+                .withHeader("X-Url", "{{request.url}}")
+                .withBody("{{request.url}}"));
+
+        assertThat(renderTime.count() - before, is(2L));
+    }
+
+    @Test
+    public void tracedRequestIsGivenTraceId() {
+        ResponseDefinition transformedResponseDef = transform(
+                mockRequest().withHeader(MatchTraces.TRACE_HEADER, "tracedRequestIsGivenTraceId"),
+                aResponse().withHeader("Content-Type", "text/xml").withBody("<static/>"));
+
+        assertThat(transformedResponseDef.getHeaders().getHeader(MatchTraces.TRACE_ID_HEADER).firstValue(),
+                is("tracedRequestIsGivenTraceId"));
+        assertThat(transformedResponseDef.getBody(), is("<static/>"));
+    }
+
+    @Test
+    public void untracedRequestIsNotGivenTraceId() {
+        ResponseDefinition transformedResponseDef = transform(mockRequest(), aResponse().withBody("<static/>"));
+
+        assertThat(transformedResponseDef.getHeaders(), is(nullValue()));
+    }
+
+    @Test
+    public void staticResponseIsNotTemplated() {
+        ResponseDefinition responseDefinition = aResponse()
+                .withHeader("Content-Type", "text/xml")
+                .withBody("<static/>")
+                .build();
+
+        ResponseDefinition transformedResponseDef =
+                transformer.transform(mockRequest(), responseDefinition, noFileSource(), Parameters.empty());
+
+        assertSame(responseDefinition, transformedResponseDef);
+        assertThat(transformer.getTemplateCacheStats().requestCount(), is(0L));
+    }
+
+    @Test
+    public void staticBodyFileIsServedFromMemory() throws Exception {
+        File bodyFile = folder.newFile("response.xml");
+        FileUtils.write(bodyFile, "<static/>", StandardCharsets.UTF_8);
+        ResponseDefinition responseDefinition = aResponse().withBodyFile("response.xml").build();
+        FileSource files = new SingleRootFileSource(folder.getRoot());
+
+        ResponseDefinition transformedResponseDef =
+                transformer.transform(mockRequest(), responseDefinition, files, Parameters.empty());
+
+        assertThat(transformedResponseDef.getBody(), is(nullValue()));
+        assertThat(new String(transformedResponseDef.getByteBody(), StandardCharsets.UTF_8), is("<static/>"));
+        assertThat(transformer.getTemplateCacheStats().requestCount(), is(0L));
+    }
+
+    @Test
+    public void templatingCanBeTurnedOff() {
+        ResponseDefinition responseDefinition = aResponse().withBody("<url>{{request.url}}</url>").build();
+
+        ResponseDefinition transformedResponseDef = transformer.transform(mockRequest().url("/things"),
+                responseDefinition, noFileSource(), Parameters.one("templated", false));
+
+        assertSame(responseDefinition, transformedResponseDef);
+    }
+
+    @Test
+    public void precompile_compilesTemplatesWithoutRendering() {
+        ResponseDefinition templated = aResponse()
+                .withHeader("X-Url", "{{request.url}}")
+                .withBody("<url>{{request.url}}</url>")
+                .build();
+
+        assertTrue(transformer.precompile(templated, noFileSource(), Parameters.empty()));
+        assertThat(transformer.getTemplateCacheStats().missCount(), is(2L));
+        assertThat(transformer.precompile(aResponse().withBody("<static/>").build(), noFileSource(), null), is(false));
+        assertThat(transformer.precompile(templated, noFileSource(), Parameters.one("templated", false)), is(false));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void precompile_throwsForInvalidTemplate() {
+        transformer.precompile(aResponse().withBody("{{#if}}").build(), noFileSource(), null);
+    }
+
     private ResponseDefinition transform(Request request, ResponseDefinitionBuilder responseDefinitionBuilder) {
         return transformer.transform(
                 request,
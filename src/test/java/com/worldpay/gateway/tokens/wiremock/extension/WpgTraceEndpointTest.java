@@ -0,0 +1,109 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static com.worldpay.gateway.tokens.wiremock.testsupport.MockRequest.mockRequest;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link WpgTraceEndpoint}.
+ */
+public class WpgTraceEndpointTest {
+
+    private MatchTraces traces;
+    private WireMockServer server;
+
+    @Before
+    public void setUp() {
+        traces = new MatchTraces(MatchTraces.MAXIMUM_SIZE);
+        server = new WireMockServer(wireMockConfig()
+                .dynamicPort()
+                .extensions(new WpgTraceEndpoint(traces)));
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void getName_returnsCorrectName() {
+        assertThat(new WpgTraceEndpoint().getName(), is("wpg-traces"));
+    }
+
+    @Test
+    public void traceIsServedById() throws Exception {
+        MatchTrace trace = traces.start(mockRequest().url("/traced").withHeader(MatchTraces.TRACE_HEADER, "abc"));
+        trace.startStub("POST /traced", true).recordStage("method", 5, false);
+
+        HttpURLConnection connection = open("GET", "/abc");
+
+        assertThat(connection.getResponseCode(), is(200));
+        String body = read(connection);
+        assertThat(body, containsString("\"id\" : \"abc\""));
+        assertThat(body, containsString("\"url\" : \"/traced\""));
+        assertThat(body, containsString("\"rejectedBy\" : \"method\""));
+    }
+
+    @Test
+    public void unknownTraceIsNotFound() throws Exception {
+        assertThat(open("GET", "/unknown").getResponseCode(), is(404));
+    }
+
+    @Test
+    public void recentTracesAreListed() throws Exception {
+        traces.start(mockRequest().withHeader(MatchTraces.TRACE_HEADER, "listed"));
+
+        HttpURLConnection connection = open("GET", "");
+
+        assertThat(connection.getResponseCode(), is(200));
+        assertThat(read(connection), containsString("\"id\" : \"listed\""));
+    }
+
+    @Test
+    public void tracesAreCleared() throws Exception {
+        traces.start(mockRequest().withHeader(MatchTraces.TRACE_HEADER, "cleared"));
+
+        assertThat(open("DELETE", "").getResponseCode(), is(200));
+        assertTrue(traces.recent().isEmpty());
+    }
+
+    @Test
+    public void tracingIsEnabledAndDisabled() throws Exception {
+        assertThat(open("POST", "/enable").getResponseCode(), is(200));
+        assertTrue(traces.isEnabled());
+
+        assertThat(open("POST", "/disable").getResponseCode(), is(200));
+        assertFalse(traces.isEnabled());
+    }
+
+    private HttpURLConnection open(String method, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://localhost:" + server.port() + "/__admin" + WpgTraceEndpoint.PATH + path)
+                        .openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private static String read(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.worldpay.gateway.tokens.wiremock.extension;
+
+import com.github.jknack.handlebars.Handlebars;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link XmlDates}.
+ */
+public class XmlDatesTest {
+
+    private final MovableClock clock = new MovableClock(Instant.parse("2017-06-26T09:56:38.250Z"), ZoneOffset.UTC);
+
+    private final XmlDates xmlDates = new XmlDates(clock);
+
+    @Test
+    public void daysFromNow_rendersCurrentDate() {
+        assertEquals("<date dayOfMonth=\"26\" month=\"06\" year=\"2017\" hour=\"09\" minute=\"56\" second=\"38\"/>",
+                xmlDates.daysFromNow(0).toString());
+    }
+
+    @Test
+    public void daysFromNow_addsDays() {
+        assertEquals("<date dayOfMonth=\"06\" month=\"07\" year=\"2017\" hour=\"09\" minute=\"56\" second=\"38\"/>",
+                xmlDates.daysFromNow(10).toString());
+        assertEquals("<date dayOfMonth=\"31\" month=\"05\" year=\"2017\" hour=\"09\" minute=\"56\" second=\"38\"/>",
+                xmlDates.daysFromNow(-26).toString());
+    }
+
+    @Test
+    public void daysFromNow_keepsTimeOfDayAcrossDaylightSaving() {
+        XmlDates london = new XmlDates(Clock.fixed(Instant.parse("2017-03-25T12:00:00Z"), ZoneId.of("Europe/London")));
+
+        assertEquals("<date dayOfMonth=\"26\" month=\"03\" year=\"2017\" hour=\"12\" minute=\"00\" second=\"00\"/>",
+                london.daysFromNow(1).toString());
+    }
+
+    @Test
+    public void daysFromNow_reusesRenderingWithinSecond() {
+        Handlebars.SafeString first = xmlDates.daysFromNow(1);
+        clock.advanceMillis(500);
+
+        assertSame(first, xmlDates.daysFromNow(1));
+    }
+
+    @Test
+    public void daysFromNow_rendersAgainInNextSecond() {
+        Handlebars.SafeString first = xmlDates.daysFromNow(1);
+        clock.advanceMillis(750);
+
+        Handlebars.SafeString second = xmlDates.daysFromNow(1);
+
+        assertNotSame(first, second);
+        assertEquals("<date dayOfMonth=\"27\" month=\"06\" year=\"2017\" hour=\"09\" minute=\"56\" second=\"39\"/>",
+                second.toString());
+    }
+
+    @Test
+    public void daysFromNow_rendersUncachedOffsetsOnceCacheIsFull() {
+        for (int i = 0; i < XmlDates.MAXIMUM_CACHED_OFFSETS; i++) {
+            xmlDates.daysFromNow(i);
+        }
+
+        int uncached = XmlDates.MAXIMUM_CACHED_OFFSETS;
+        assertNotSame(xmlDates.daysFromNow(uncached), xmlDates.daysFromNow(uncached));
+        assertEquals(xmlDates.daysFromNow(uncached).toString(), xmlDates.daysFromNow(uncached).toString());
+    }
+
+    private static final class MovableClock extends Clock {
+        private Instant instant;
+        private final ZoneId zone;
+
+        private MovableClock(Instant instant, ZoneId zone) {
+            this.instant = instant;
+            this.zone = zone;
+        }
+
+        void advanceMillis(long millis) {
+            instant = instant.plusMillis(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return new MovableClock(instant, zone);
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
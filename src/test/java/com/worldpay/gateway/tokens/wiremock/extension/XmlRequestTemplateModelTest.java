@@ -16,7 +16,14 @@ import static com.worldpay.gateway.tokens.wiremock.testsupport.MockRequest.mockR
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 
 /**
  * Tests for {@link XmlRequestTemplateModel}.
@@ -106,4 +113,46 @@ public class XmlRequestTemplateModelTest {
         assertEquals("<xml><with><some><elements and='someAttributes'/></some></with></xml>", model.getBody());
     }
 
+    @Test
+    public void from_readsNothingFromTheRequest() {
+        Request request = mock(Request.class);
+
+        XmlRequestTemplateModel.from(request);
+
+        verifyZeroInteractions(request);
+    }
+
+    @Test
+    public void getUrl_doesNotReadTheBody() {
+        Request request = spy(mockRequest()
+                .body("<xml/>")
+                .url("TEST_URL?queryKey=queryValue"));
+        XmlRequestTemplateModel model = XmlRequestTemplateModel.from(request);
+
+        model.getUrl();
+        model.getPath();
+        model.getQuery();
+
+        verify(request, never()).getBody();
+        verify(request, never()).getBodyAsString();
+    }
+
+    @Test
+    public void getHeaders_isWorkedOutOnce() {
+        Request request = spy(mockRequest().withHeader("TEST HEADER KEY", "TEST HEADER VALUE"));
+        XmlRequestTemplateModel model = XmlRequestTemplateModel.from(request);
+
+        assertSame(model.getHeaders(), model.getHeaders());
+        verify(request, times(1)).getAllHeaderKeys();
+    }
+
+    @Test
+    public void getXmlBody_isParsedOnceEvenIfInvalid() {
+        Request request = spy(mockRequest().body("NOT VALID XML"));
+        XmlRequestTemplateModel model = XmlRequestTemplateModel.from(request);
+
+        assertNull(model.getXmlBody());
+        assertNull(model.getXmlBody());
+        verify(request, times(1)).getBody();
+    }
 }
@@ -5,6 +5,7 @@ import com.github.tomakehurst.wiremock.common.TextFile;
 import com.github.tomakehurst.wiremock.core.WireMockApp;
 import com.github.tomakehurst.wiremock.extension.Parameters;
 import com.github.tomakehurst.wiremock.matching.MatchResult;
+import com.google.common.collect.ImmutableMap;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
@@ -150,6 +151,51 @@ public class DocumentMatcherTest {
         assertFalse(actual.isExactMatch());
     }
 
+    @Test
+    public void matchAgainstXpath_returnsExactMatchForMixOfSimpleAndOtherXpaths() throws Exception {
+        DocumentMatcher matcher = new DocumentMatcher(
+                fileSource,
+                mockRequest().body("<xml><with><some><elements and='someAttributes'/></some></with></xml>"),
+                Parameters.one("xpath",
+                        Arrays.asList(
+                                "/xml/with/some",
+                                "//elements[@and='someAttributes']"
+                        )
+                )
+        );
+
+        MatchResult actual = matcher.matchAgainstXpath();
+
+        assertTrue(actual.isExactMatch());
+    }
+
+    @Test
+    public void matchAgainstXpath_returnsExactMatchWhenBodyHasInternalDtdSubset() throws Exception {
+        DocumentMatcher matcher = new DocumentMatcher(
+                fileSource,
+                mockRequest().body("<!DOCTYPE xml [<!ENTITY value 'someAttributes'>]>"
+                        + "<xml><with><some><elements and='&value;'/></some></with></xml>"),
+                Parameters.one("xpath", Collections.singletonList("/xml/with/some/elements[@and='someAttributes']"))
+        );
+
+        MatchResult actual = matcher.matchAgainstXpath();
+
+        assertTrue(actual.isExactMatch());
+    }
+
+    @Test
+    public void matchAgainstXpath_returnsNoMatchWhenRootDiffersInMalformedBody() throws Exception {
+        DocumentMatcher matcher = new DocumentMatcher(
+                fileSource,
+                mockRequest().body("<other><unclosed></other>"),
+                Parameters.one("xpath", Collections.singletonList("/xml/with/some"))
+        );
+
+        MatchResult actual = matcher.matchAgainstXpath();
+
+        assertFalse(actual.isExactMatch());
+    }
+
     @Test
     public void matchAgainstXmlLike_returnsExactMatch() throws Exception {
         DocumentMatcher matcher = new DocumentMatcher(
@@ -349,4 +395,82 @@ public class DocumentMatcherTest {
         assertTrue(actual.isExactMatch());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void match_returnsExactMatchWhenEveryCheckPasses() throws Exception {
+        DocumentMatcher matcher = new DocumentMatcher(
+                fileSource,
+                mockRequest().body("<some><kind/><of><xml with=\"attributes\"/></of></some>"),
+                Parameters.from(ImmutableMap.of(
+                        "xpath", Collections.singletonList("//xml[@with='attributes']"),
+                        "xmlLike", "<some><kind/><of><xml with=\"other\"/></of></some>"))
+        );
+
+        assertTrue(matcher.match().isExactMatch());
+    }
+
+    @Test
+    public void match_returnsNoMatchWhenXpathFails() throws Exception {
+        DocumentMatcher matcher = new DocumentMatcher(
+                fileSource,
+                mockRequest().body("<some><kind/><of><xml with=\"attributes\"/></of></some>"),
+                Parameters.from(ImmutableMap.of(
+                        "xpath", Collections.singletonList("/some/none"),
+                        "xmlLike", "<some><kind/><of><xml with=\"other\"/></of></some>"))
+        );
+
+        assertFalse(matcher.match().isExactMatch());
+    }
+
+    @Test
+    public void match_returnsNoMatchWhenStructureDiffers() throws Exception {
+        DocumentMatcher matcher = new DocumentMatcher(
+                fileSource,
+                mockRequest().body("<some><kind/><of><xml/></of></some>"),
+                Parameters.one("xmlLike", "<some><kind/><of><xml with=\"attributes\"/></of></some>")
+        );
+
+        assertFalse(matcher.match().isExactMatch());
+    }
+
+    @Test
+    public void match_doesNotParseBodyWhenReferenceRootDiffers() throws Exception {
+        // a DOM parse would throw for this body
+        DocumentMatcher matcher = new DocumentMatcher(
+                fileSource,
+                mockRequest().body("<other><unclosed></other>"),
+                Parameters.one("xmlLike", "<some><kind/></some>")
+        );
+
+        assertFalse(matcher.match().isExactMatch());
+        assertFalse(matcher.matchAgainstXmlLike().isExactMatch());
+    }
+
+    @Test
+    public void match_returnsNoMatchWhenReferenceFileRootDiffers() throws Exception {
+        when(fileSource.child(WireMockApp.FILES_ROOT)).thenReturn(fileSource);
+        when(fileSource.getTextFileNamed("test.xml")).thenReturn(textFile);
+        when(textFile.readContentsAsString()).thenReturn("<some><kind/></some>");
+
+        DocumentMatcher matcher = new DocumentMatcher(
+                fileSource,
+                mockRequest().body("<other><kind/></other>"),
+                Parameters.from(ImmutableMap.of(
+                        "xpath", Collections.singletonList("/other/kind"),
+                        "xmlLikeFile", "test.xml"))
+        );
+
+        assertFalse(matcher.match().isExactMatch());
+        assertTrue(matcher.matchAgainstXpath().isExactMatch());
+    }
+
+    @Test
+    public void match_returnsExactMatchWithoutDocumentParameters() throws Exception {
+        DocumentMatcher matcher = new DocumentMatcher(
+                fileSource,
+                mockRequest().body("<some/>"),
+                Parameters.empty()
+        );
+
+        assertTrue(matcher.match().isExactMatch());
+    }
+}
@@ -0,0 +1,62 @@
+package com.worldpay.gateway.tokens.wiremock.extension.matchers;
+
+import com.github.tomakehurst.wiremock.http.HttpHeader;
+import org.junit.Test;
+
+import static com.github.tomakehurst.wiremock.http.HttpHeader.httpHeader;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link HeaderMatcher}.
+ */
+public class HeaderMatcherTest {
+
+    @Test
+    public void forValue_returnsSameMatcherForSameValue() {
+        assertSame(HeaderMatcher.forValue("application/xml"), HeaderMatcher.forValue("application/xml"));
+    }
+
+    @Test
+    public void isLiteral_recognisesValuesWithoutMetacharacters() {
+        assertTrue(HeaderMatcher.isLiteral("application/xml; charset=UTF-8"));
+        assertTrue(HeaderMatcher.isLiteral("TEST_CORRELATION-1"));
+        assertFalse(HeaderMatcher.isLiteral("application/.*"));
+        assertFalse(HeaderMatcher.isLiteral("a|b"));
+        assertFalse(HeaderMatcher.isLiteral("(a)"));
+    }
+
+    @Test
+    public void matches_comparesLiteralIgnoringCase() {
+        HeaderMatcher matcher = HeaderMatcher.compile("application/xml");
+
+        assertTrue(matcher.matches(httpHeader("Content-Type", "Application/XML")));
+        assertFalse(matcher.matches(httpHeader("Content-Type", "application/xml2")));
+    }
+
+    @Test
+    public void matches_requiresWholeValueToMatchRegex() {
+        HeaderMatcher matcher = HeaderMatcher.compile("application/.*");
+
+        assertTrue(matcher.matches(httpHeader("Content-Type", "application/xml")));
+        assertFalse(matcher.matches(httpHeader("Content-Type", "text/application/xml")));
+    }
+
+    @Test
+    public void matches_acceptsAnyOfSeveralValues() {
+        HeaderMatcher matcher = HeaderMatcher.compile("B.*");
+
+        assertTrue(matcher.matches(httpHeader("X-Header", "A", "Bee")));
+    }
+
+    @Test
+    public void matches_returnsFalseForAbsentHeader() {
+        assertFalse(HeaderMatcher.compile("A").matches(HttpHeader.absent("X-Header")));
+    }
+
+    @Test
+    public void matches_neverMatchesInvalidRegex() {
+        assertFalse(HeaderMatcher.compile("[unclosed").matches(httpHeader("X-Header", "[unclosed")));
+    }
+}
@@ -0,0 +1,159 @@
+package com.worldpay.gateway.tokens.wiremock.extension.matchers;
+
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.google.common.collect.ImmutableMap;
+import com.worldpay.gateway.tokens.wiremock.extension.metrics.Metrics;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link MatchPlan}.
+ */
+public class MatchPlanTest {
+
+    @Test
+    public void of_returnsSamePlanForSameParameters() {
+        Parameters parameters = Parameters.one("url", "/test");
+
+        assertSame(MatchPlan.of(parameters), MatchPlan.of(parameters));
+    }
+
+    @Test
+    public void of_compilesEqualParametersSeparately() {
+        assertNotSame(MatchPlan.of(Parameters.one("url", "/test")), MatchPlan.of(Parameters.one("url", "/test")));
+    }
+
+    @Test
+    public void forget_dropsPlanOfThatInstanceOnly() {
+        Parameters forgotten = Parameters.one("url", "/test");
+        Parameters equal = Parameters.one("url", "/test");
+        MatchPlan first = MatchPlan.of(forgotten);
+        MatchPlan kept = MatchPlan.of(equal);
+
+        MatchPlan.forget(forgotten);
+
+        assertNotSame(first, MatchPlan.of(forgotten));
+        assertSame(kept, MatchPlan.of(equal));
+    }
+
+    @Test
+    public void forget_dropsPerStubMetrics() {
+        System.setProperty(MatchPlan.PER_STUB_METRICS_PROPERTY, "true");
+        try {
+            Parameters parameters = Parameters.one("url", "/forgotten");
+            MatchPlan.of(parameters).recordAttempt();
+            assertTrue(Metrics.shared().render().contains("stub=\"ANY /forgotten\""));
+
+            MatchPlan.forget(parameters);
+
+            assertFalse(Metrics.shared().render().contains("stub=\"ANY /forgotten\""));
+        } finally {
+            System.clearProperty(MatchPlan.PER_STUB_METRICS_PROPERTY);
+        }
+    }
+
+    @Test
+    public void forget_keepsPerStubMetricsOfEqualStub() {
+        System.setProperty(MatchPlan.PER_STUB_METRICS_PROPERTY, "true");
+        try {
+            Parameters forgotten = Parameters.one("url", "/shared");
+            Parameters equal = Parameters.one("url", "/shared");
+            MatchPlan.of(forgotten).recordAttempt();
+            MatchPlan.of(equal).recordAttempt();
+
+            MatchPlan.forget(forgotten);
+
+            assertTrue(Metrics.shared().render().contains("stub=\"ANY /shared\""));
+        } finally {
+            System.clearProperty(MatchPlan.PER_STUB_METRICS_PROPERTY);
+        }
+    }
+
+    @Test
+    public void of_compilesEveryParameter() {
+        Parameters parameters = Parameters.from(ImmutableMap.<String, Object>builder()
+                .put("method", "POST")
+                .put("url", "/test")
+                .put("headers", ImmutableMap.of("Content-Type", "application/xml"))
+                .put("xpath", Arrays.asList("/some/of", "/some/of/and[@another='fixed']"))
+                .put("xmlLike", "<some><of/></some>")
+                .put("xmlLikeFile", "examples/test.xml")
+                .build());
+
+        MatchPlan plan = MatchPlan.of(parameters);
+
+        assertTrue(plan.isValid());
+        assertEquals("POST", plan.getMethod());
+        assertEquals("/test", plan.getUrl());
+        assertEquals("Content-Type", plan.getHeaders().get(0).getName());
+        assertSame(HeaderMatcher.forValue("application/xml"), plan.getHeaders().get(0).getMatcher());
+        assertEquals("/some/of/and[@another='fixed']", plan.getXpaths().get(1).getExpression());
+        assertEquals(2, plan.getSimpleXpaths().size());
+        assertTrue(plan.getXmlLike().isValid());
+        assertEquals("examples/test.xml", plan.getXmlLikeFile());
+        assertTrue(plan.hasReferenceDocument());
+    }
+
+    @Test
+    public void of_leavesAbsentParametersEmpty() {
+        MatchPlan plan = MatchPlan.of(Parameters.empty());
+
+        assertTrue(plan.isValid());
+        assertNull(plan.getMethod());
+        assertNull(plan.getUrl());
+        assertTrue(plan.getHeaders().isEmpty());
+        assertNull(plan.getXpaths());
+        assertNull(plan.getSimpleXpaths());
+        assertFalse(plan.hasReferenceDocument());
+    }
+
+    @Test
+    public void of_hasNoSimpleXpathsUnlessAllAreSimple() {
+        MatchPlan plan = MatchPlan.of(Parameters.one("xpath", Arrays.asList("/some/of", "//of")));
+
+        assertEquals(2, plan.getXpaths().size());
+        assertNull(plan.getSimpleXpaths());
+    }
+
+    @Test
+    public void of_returnsInvalidPlanForUnsupportedParameter() {
+        assertFalse(MatchPlan.of(Parameters.one("unsupported", "value")).isValid());
+    }
+
+    @Test
+    public void of_returnsInvalidPlanForWronglyTypedParameter() {
+        assertFalse(MatchPlan.of(Parameters.one("xpath", "/not/a/list")).isValid());
+        assertFalse(MatchPlan.of(Parameters.one("url", Collections.singletonList("/test"))).isValid());
+    }
+
+    @Test
+    public void describe_includesEveryParameter() {
+        Parameters parameters = Parameters.from(ImmutableMap.<String, Object>builder()
+                .put("method", "POST")
+                .put("url", "/test")
+                .put("headers", ImmutableMap.of("Content-Type", "application/xml"))
+                .put("xpath", Arrays.asList("/some/of", "/some/of/and"))
+                .put("xmlLike", "<some><of/></some>")
+                .put("xmlLikeFile", "examples/test.xml")
+                .build());
+
+        assertEquals("POST /test headers={Content-Type=application/xml} xpath=[/some/of, /some/of/and]"
+                        + " xmlLike=#" + Integer.toHexString("<some><of/></some>".hashCode())
+                        + " xmlLikeFile=examples/test.xml",
+                MatchPlan.describe(parameters));
+    }
+
+    @Test
+    public void describe_showsAbsentMethodAndUrlAsWildcards() {
+        assertEquals("ANY *", MatchPlan.describe(Parameters.empty()));
+    }
+}
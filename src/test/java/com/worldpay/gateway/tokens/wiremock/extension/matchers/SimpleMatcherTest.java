@@ -5,6 +5,7 @@ import com.github.tomakehurst.wiremock.http.RequestMethod;
 import com.github.tomakehurst.wiremock.matching.MatchResult;
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -179,4 +180,34 @@ public class SimpleMatcherTest {
         assertFalse(actual.isExactMatch());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void match_returnsExactMatchWhenEveryCheckPasses() {
+        Map<String, Object> params = new HashMap<>();
+        params.put("method", "POST");
+        params.put("url", "/test");
+        params.put("headers", Collections.singletonMap("SomeHeader", "A value"));
+
+        SimpleMatcher matcher = new SimpleMatcher(
+                mockRequest().method(RequestMethod.POST).url("/test").withHeader("SomeHeader", "A value"),
+                Parameters.from(params)
+        );
+
+        assertTrue(matcher.match().isExactMatch());
+    }
+
+    @Test
+    public void match_returnsNoMatchWhenAnyCheckFails() {
+        Map<String, Object> params = new HashMap<>();
+        params.put("method", "POST");
+        params.put("url", "/other");
+        params.put("headers", Collections.singletonMap("SomeHeader", "A value"));
+
+        SimpleMatcher matcher = new SimpleMatcher(
+                mockRequest().method(RequestMethod.POST).url("/test").withHeader("SomeHeader", "A value"),
+                Parameters.from(params)
+        );
+
+        assertFalse(matcher.match().isExactMatch());
+    }
+
+}
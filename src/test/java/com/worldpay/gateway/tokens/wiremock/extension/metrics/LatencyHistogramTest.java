@@ -0,0 +1,78 @@
+package com.worldpay.gateway.tokens.wiremock.extension.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketBounds_areWrittenInSeconds() {
+        assertThat(LatencyHistogram.BUCKET_BOUNDS_SECONDS[0], is("0.000001"));
+        assertThat(LatencyHistogram.BUCKET_BOUNDS_SECONDS[1], is("0.0000025"));
+        assertThat(LatencyHistogram.BUCKET_BOUNDS_SECONDS[18], is("1"));
+        assertThat(LatencyHistogram.BUCKET_BOUNDS_SECONDS[21], is("10"));
+    }
+
+    @Test
+    public void record_countsDurationInSmallestBucketItFits() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(500);
+        histogram.record(1_000);
+        histogram.record(1_001);
+        histogram.record(TimeUnit.SECONDS.toNanos(60));
+
+        long[] counts = histogram.cumulativeCounts();
+        assertThat(counts[0], is(2L));
+        assertThat(counts[1], is(3L));
+        assertThat(counts[counts.length - 2], is(3L));
+        assertThat(counts[counts.length - 1], is(4L));
+        assertThat(histogram.count(), is(4L));
+    }
+
+    @Test
+    public void record_treatsNegativeDurationAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(-5);
+
+        assertThat(histogram.cumulativeCounts()[0], is(1L));
+        assertThat(histogram.sumSeconds(), is(0.0));
+    }
+
+    @Test
+    public void sumSeconds_totalsDurations() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(250));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1_500));
+
+        assertEquals(1.75, histogram.sumSeconds(), 1e-9);
+    }
+
+    @Test
+    public void recordSince_recordsElapsedTime() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.recordSince(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10));
+
+        assertThat(histogram.count(), is(1L));
+        assertTrue(histogram.sumSeconds() >= 0.01);
+    }
+
+    @Test
+    public void cumulativeCounts_areZeroWhenNothingRecorded() {
+        assertArrayEquals(new long[LatencyHistogram.BUCKET_BOUNDS_NANOS.length + 1],
+                new LatencyHistogram().cumulativeCounts());
+    }
+}
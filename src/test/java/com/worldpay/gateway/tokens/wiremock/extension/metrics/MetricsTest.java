@@ -0,0 +1,149 @@
+package com.worldpay.gateway.tokens.wiremock.extension.metrics;
+
+import com.google.common.cache.CacheStats;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link Metrics}.
+ */
+public class MetricsTest {
+
+    private Metrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new Metrics();
+    }
+
+    @Test
+    public void counter_returnsSameCounterForSameLabel() {
+        Counter first = metrics.counter("test_total", "Help.", "stub", "a");
+
+        assertThat(metrics.counter("test_total", "Help.", "stub", "a"), is(sameInstance(first)));
+        assertThat(metrics.counter("test_total", "Help.", "stub", "b"), is(not(sameInstance(first))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void histogram_throwsWhenNameIsUsedByCounter() {
+        metrics.counter("test_total", "Help.");
+
+        metrics.histogram("test_total", "Help.");
+    }
+
+    @Test
+    public void render_isEmptyWhenNothingRegistered() {
+        assertThat(metrics.render(), is(""));
+    }
+
+    @Test
+    public void render_writesCounters() {
+        metrics.counter("test_total", "Things counted.").add(3);
+        metrics.counter("labelled_total", "Things counted by stub.", "stub", "b").increment();
+        metrics.counter("labelled_total", "Things counted by stub.", "stub", "a");
+
+        assertThat(metrics.render(), is(
+                "# HELP labelled_total Things counted by stub.\n"
+                        + "# TYPE labelled_total counter\n"
+                        + "labelled_total{stub=\"a\"} 0\n"
+                        + "labelled_total{stub=\"b\"} 1\n"
+                        + "# HELP test_total Things counted.\n"
+                        + "# TYPE test_total counter\n"
+                        + "test_total 3\n"));
+    }
+
+    @Test
+    public void remove_dropsOneSeries() {
+        metrics.counter("labelled_total", "Things counted by stub.", "stub", "a").increment();
+        metrics.counter("labelled_total", "Things counted by stub.", "stub", "b").increment();
+
+        metrics.remove("labelled_total", "stub", "a");
+        metrics.remove("unknown_total", "stub", "a");
+
+        assertThat(metrics.render(), is(
+                "# HELP labelled_total Things counted by stub.\n"
+                        + "# TYPE labelled_total counter\n"
+                        + "labelled_total{stub=\"b\"} 1\n"));
+    }
+
+    @Test
+    public void render_escapesLabelValues() {
+        metrics.counter("test_total", "Help.", "stub", "POST /url xpath=[//a[@b=\"c\\d\"]]\n");
+
+        assertThat(metrics.render(),
+                containsString("test_total{stub=\"POST /url xpath=[//a[@b=\\\"c\\\\d\\\"]]\\n\"} 0\n"));
+    }
+
+    @Test
+    public void render_writesCumulativeHistogramBuckets() {
+        LatencyHistogram histogram = metrics.histogram("test_seconds", "Time taken.", "mode", "dom");
+        histogram.record(800);
+        histogram.record(2_000_000);
+
+        String rendered = metrics.render();
+
+        assertThat(rendered, containsString("# TYPE test_seconds histogram\n"));
+        assertThat(rendered, containsString("test_seconds_bucket{mode=\"dom\",le=\"0.000001\"} 1\n"));
+        assertThat(rendered, containsString("test_seconds_bucket{mode=\"dom\",le=\"0.001\"} 1\n"));
+        assertThat(rendered, containsString("test_seconds_bucket{mode=\"dom\",le=\"0.0025\"} 2\n"));
+        assertThat(rendered, containsString("test_seconds_bucket{mode=\"dom\",le=\"+Inf\"} 2\n"));
+        assertThat(rendered, containsString("test_seconds_sum{mode=\"dom\"} 0.0020008\n"));
+        assertThat(rendered, containsString("test_seconds_count{mode=\"dom\"} 2\n"));
+    }
+
+    @Test
+    public void render_writesUnlabelledHistogram() {
+        metrics.histogram("test_seconds", "Time taken.").record(1);
+
+        String rendered = metrics.render();
+
+        assertThat(rendered, containsString("test_seconds_bucket{le=\"+Inf\"} 1\n"));
+        assertThat(rendered, containsString("test_seconds_count 1\n"));
+    }
+
+    @Test
+    public void render_readsCacheStatsWhenRendered() {
+        CacheStats[] stats = { new CacheStats(1, 2, 0, 0, 0, 3) };
+        metrics.registerCache("xpath", () -> stats[0]);
+        stats[0] = new CacheStats(4, 5, 0, 0, 0, 6);
+
+        String rendered = metrics.render();
+
+        assertThat(rendered, containsString("wpg_cache_requests_total{cache=\"xpath\",result=\"hit\"} 4\n"));
+        assertThat(rendered, containsString("wpg_cache_requests_total{cache=\"xpath\",result=\"miss\"} 5\n"));
+        assertThat(rendered, containsString("wpg_cache_evictions_total{cache=\"xpath\"} 6\n"));
+    }
+
+    @Test
+    public void render_writesEachHeaderOnce() {
+        metrics.registerCache("a", () -> new CacheStats(0, 0, 0, 0, 0, 0));
+        metrics.registerCache("b", () -> new CacheStats(0, 0, 0, 0, 0, 0));
+
+        String rendered = metrics.render();
+        String header = "# TYPE wpg_cache_requests_total counter\n";
+
+        assertThat(rendered.indexOf(header), is(rendered.lastIndexOf(header)));
+        assertTrue(rendered.indexOf("cache=\"a\"") < rendered.indexOf("cache=\"b\""));
+    }
+
+    @Test
+    public void reset_setsEverySeriesToZero() {
+        Counter counter = metrics.counter("test_total", "Help.", "stub", "a");
+        LatencyHistogram histogram = metrics.histogram("test_seconds", "Help.");
+        counter.add(2);
+        histogram.record(1_000);
+
+        metrics.reset();
+
+        assertThat(counter.get(), is(0L));
+        assertThat(histogram.count(), is(0L));
+        assertThat(histogram.sumSeconds(), is(0.0));
+    }
+}
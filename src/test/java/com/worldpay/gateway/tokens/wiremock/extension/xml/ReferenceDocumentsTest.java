@@ -0,0 +1,111 @@
+package com.worldpay.gateway.tokens.wiremock.extension.xml;
+
+import com.github.tomakehurst.wiremock.common.TextFile;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.ReferenceDocuments.ReferenceDocument;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link ReferenceDocuments}.
+ */
+public class ReferenceDocumentsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ReferenceDocuments documents = new ReferenceDocuments(ReferenceDocuments.MAXIMUM_SIZE);
+
+    @Test
+    public void inline_parsesDocumentOnce() {
+        ReferenceDocument first = documents.inline("<some><kind/></some>");
+
+        assertTrue(first.isValid());
+        assertEquals("some", first.getDocument().getDocumentElement().getNodeName());
+        assertSame(first, documents.inline("<some><kind/></some>"));
+        assertEquals(1, documents.stats().hitCount());
+    }
+
+    @Test
+    public void inline_remembersInvalidDocument() {
+        ReferenceDocument first = documents.inline("INVALID XML");
+
+        assertFalse(first.isValid());
+        assertNull(first.getDocument());
+        assertSame(first, documents.inline("INVALID XML"));
+    }
+
+    @Test
+    public void file_readsUnchangedFileOnce() throws Exception {
+        TextFile file = spy(textFile("example.xml", "<some><kind/></some>"));
+
+        ReferenceDocument first = documents.file(file);
+
+        assertSame(first, documents.file(file));
+        verify(file, times(1)).readContentsAsString();
+    }
+
+    @Test
+    public void file_reloadsChangedFile() throws Exception {
+        TextFile file = textFile("example.xml", "<some><kind/></some>");
+        ReferenceDocument first = documents.file(file);
+
+        File onDisk = new File(file.getUri());
+        FileUtils.write(onDisk, "<other/>", StandardCharsets.UTF_8);
+        assertTrue(onDisk.setLastModified(onDisk.lastModified() + 10_000));
+
+        ReferenceDocument second = documents.file(file);
+
+        assertNotSame(first, second);
+        assertEquals("other", second.getDocument().getDocumentElement().getNodeName());
+    }
+
+    @Test
+    public void invalidate_rereadsFileEvenIfModificationTimeIsUnchanged() throws Exception {
+        TextFile file = textFile("example.xml", "<some><kind/></some>");
+        documents.file(file);
+
+        File onDisk = new File(file.getUri());
+        long lastModified = onDisk.lastModified();
+        FileUtils.write(onDisk, "<other/>", StandardCharsets.UTF_8);
+        assertTrue(onDisk.setLastModified(lastModified));
+        documents.invalidate(onDisk.toURI());
+
+        assertEquals("other", documents.file(file).getDocument().getDocumentElement().getNodeName());
+    }
+
+    @Test
+    public void file_doesNotCacheFileWithoutUri() {
+        TextFile file = mock(TextFile.class);
+        when(file.readContentsAsString()).thenReturn("<some/>");
+
+        assertNotSame(documents.file(file), documents.file(file));
+    }
+
+    @Test
+    public void shared_returnsSameCache() {
+        assertSame(ReferenceDocuments.shared(), ReferenceDocuments.shared());
+    }
+
+    private TextFile textFile(String name, String contents) throws Exception {
+        File file = folder.newFile(name);
+        FileUtils.write(file, contents, StandardCharsets.UTF_8);
+        return new TextFile(file.toURI());
+    }
+}
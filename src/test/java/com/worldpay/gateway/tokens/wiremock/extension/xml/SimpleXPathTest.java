@@ -0,0 +1,69 @@
+package com.worldpay.gateway.tokens.wiremock.extension.xml;
+
+import com.worldpay.gateway.tokens.wiremock.extension.xml.SimpleXPath.Predicate;
+import com.worldpay.gateway.tokens.wiremock.extension.xml.SimpleXPath.Step;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link SimpleXPath}.
+ */
+public class SimpleXPathTest {
+
+    @Test
+    public void parse_readsPlainPath() {
+        SimpleXPath xpath = SimpleXPath.parse("/xml/with/some");
+
+        assertEquals(3, xpath.getSteps().size());
+        assertEquals("some", xpath.getSteps().get(2).name);
+        assertEquals(0, xpath.getSteps().get(2).predicates.size());
+        assertNull(xpath.getAttribute());
+        assertEquals("/xml/with/some", xpath.getExpression());
+    }
+
+    @Test
+    public void parse_readsPredicates() {
+        SimpleXPath xpath = SimpleXPath.parse("/some/of/and[@another='fixed'][@other=\"it's\"][@present]");
+
+        Step step = xpath.getSteps().get(2);
+        assertEquals(3, step.predicates.size());
+        assertPredicate(step.predicates.get(0), "another", "fixed");
+        assertPredicate(step.predicates.get(1), "other", "it's");
+        assertPredicate(step.predicates.get(2), "present", null);
+    }
+
+    @Test
+    public void parse_readsTrailingAttribute() {
+        SimpleXPath xpath = SimpleXPath.parse("/xml/with/some/elements/@and");
+
+        assertEquals(4, xpath.getSteps().size());
+        assertEquals("and", xpath.getAttribute());
+    }
+
+    @Test
+    public void parse_rejectsExpressionsOutsideSubset() {
+        String[] expressions = {
+                "", "/", "xml/with", "//some", "/xml//with", "/xml/*", "/xml/with[1]", "/xml/with[some]",
+                "/xml/with[@a!='b']", "/xml/with/text()", "/xml/with/@*", "/xml/@a/b", "/ns:xml",
+                "/xml | /other", "/xml[ @a='b']", "count(/xml)", "/xml/@a/@b"
+        };
+
+        for (String expression : expressions) {
+            assertNull(expression, SimpleXPath.parse(expression));
+        }
+    }
+
+    @Test
+    public void sampleDocument_matchesSteps() {
+        assertEquals("<xml><with attr=\"\"></with></xml>", SimpleXPath.parse("/xml/with/@attr").sampleDocument());
+        assertEquals("<xml><with a=\"&quot;&lt;\" b=\"\"></with></xml>",
+                SimpleXPath.parse("/xml/with[@a='\"<'][@b]").sampleDocument());
+    }
+
+    private static void assertPredicate(Predicate predicate, String attribute, String value) {
+        assertEquals(attribute, predicate.attribute);
+        assertEquals(value, predicate.value);
+    }
+}
@@ -0,0 +1,128 @@
+package com.worldpay.gateway.tokens.wiremock.extension.xml;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link StreamingXPathEvaluator}.
+ */
+public class StreamingXPathEvaluatorTest {
+
+    private static final String XML =
+            "<!DOCTYPE some PUBLIC \"-//Some//DTD Some v1//EN\" \"http://localhost/some.dtd\">"
+                    + "<some version='1'>"
+                    + "<of><and another='other'/><and another='fixed' extra='&amp;'/></of>"
+                    + "<of><but/></of>"
+                    + "</some>";
+
+    @Test
+    public void evaluate_agreesWithDom() throws Exception {
+        String[] expressions = {
+                "/some", "/other", "/some[@version='1']", "/some[@version='2']", "/some[@version]",
+                "/some/of", "/some/of/and", "/some/of/but", "/some/of/none", "/some/and",
+                "/some/of/and[@another='fixed']", "/some/of/and[@another='missing']",
+                "/some/of/and[@another='fixed'][@extra='&']", "/some/of/and[@another='other'][@extra]",
+                "/some/of/and/@extra", "/some/of/but/@extra", "/some/@version", "/some/of/and/and"
+        };
+
+        XPathCache cache = new XPathCache(XPathCache.MAXIMUM_SIZE);
+        Document document = new ReferenceDocuments(1).inline(XML).getDocument();
+
+        List<SimpleXPath> xpaths = new ArrayList<>();
+        boolean[] expected = new boolean[expressions.length];
+        for (int i = 0; i < expressions.length; i++) {
+            xpaths.add(SimpleXPath.parse(expressions[i]));
+            expected[i] = cache.compile(expressions[i]).evaluateNodeSet(document).getLength() > 0;
+        }
+
+        assertArrayEquals(expected, StreamingXPathEvaluator.evaluate(bytes(XML), null, xpaths));
+    }
+
+    @Test
+    public void evaluate_returnsAllFalseWhenRootRulesEverythingOut() {
+        // the unclosed element is never read
+        boolean[] results = StreamingXPathEvaluator.evaluate(
+                bytes("<other><unclosed></other>"), null, xpaths("/some/of", "/some"));
+
+        assertArrayEquals(new boolean[] {false, false}, results);
+    }
+
+    @Test
+    public void evaluate_givesUpOnMalformedDocument() {
+        assertNull(StreamingXPathEvaluator.evaluate(bytes("<some><of></some>"), null, xpaths("/some/of")));
+        assertNull(StreamingXPathEvaluator.evaluate(bytes("INVALID XML"), null, xpaths("/some")));
+    }
+
+    @Test
+    public void evaluate_appliesInternalDtdSubset() {
+        boolean[] results = StreamingXPathEvaluator.evaluate(
+                bytes("<!DOCTYPE some [<!ATTLIST some version CDATA '1'><!ENTITY e 'v'>]><some other='&e;'/>"), null,
+                xpaths("/some[@version='1']", "/some[@other='v']"));
+
+        assertArrayEquals(new boolean[] {true, true}, results);
+    }
+
+    @Test
+    public void evaluate_givesUpOnPrefixedNamesItHasToTest() {
+        assertNull(StreamingXPathEvaluator.evaluate(
+                bytes("<ns:some xmlns:ns='urn:some'/>"), null, xpaths("/some")));
+        assertNull(StreamingXPathEvaluator.evaluate(
+                bytes("<some xmlns:xsi='urn:xsi' xsi:type='a'/>"), null, xpaths("/some[@type]")));
+    }
+
+    @Test
+    public void evaluate_ignoresPrefixedNamesItDoesNotTest() {
+        boolean[] results = StreamingXPathEvaluator.evaluate(
+                bytes("<some><of><ns:and xmlns:ns='urn:and'/></of></some>"), null, xpaths("/some/of"));
+
+        assertArrayEquals(new boolean[] {true}, results);
+    }
+
+    @Test
+    public void evaluate_answersEmptyList() {
+        assertArrayEquals(new boolean[0], StreamingXPathEvaluator.evaluate(bytes(XML), null, Collections.emptyList()));
+    }
+
+    @Test
+    public void rootElementName_readsDocumentElement() {
+        assertEquals("some", StreamingXPathEvaluator.rootElementName(bytes(XML), null));
+        assertEquals("ns:some", StreamingXPathEvaluator.rootElementName(bytes("<ns:some xmlns:ns='urn:some'>"), null));
+    }
+
+    @Test
+    public void rootElementName_returnsNullWithoutDocumentElement() {
+        assertNull(StreamingXPathEvaluator.rootElementName(bytes("INVALID XML"), null));
+        assertNull(StreamingXPathEvaluator.rootElementName(bytes("<!-- nothing -->"), null));
+    }
+
+    @Test
+    public void evaluate_usesGivenEncoding() {
+        byte[] xml = "<some name='caf\u00e9'/>".getBytes(StandardCharsets.ISO_8859_1);
+
+        assertArrayEquals(new boolean[] {true},
+                StreamingXPathEvaluator.evaluate(xml, "ISO-8859-1", xpaths("/some[@name='caf\u00e9']")));
+    }
+
+    private static byte[] bytes(String xml) {
+        return xml.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<SimpleXPath> xpaths(String... expressions) {
+        List<SimpleXPath> xpaths = new ArrayList<>();
+        for (String expression : Arrays.asList(expressions)) {
+            xpaths.add(SimpleXPath.parse(expression));
+        }
+
+        return xpaths;
+    }
+}
@@ -0,0 +1,72 @@
+package com.worldpay.gateway.tokens.wiremock.extension.xml;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Tests for {@link StructuralFingerprint}.
+ */
+public class StructuralFingerprintTest {
+
+    @Test
+    public void of_isEqualForIdenticalDocuments() throws Exception {
+        assertEquals(
+                fingerprint("<some><kind/><of><xml with=\"attributes\"/></of></some>"),
+                fingerprint("<some><kind/><of><xml with=\"attributes\"/></of></some>"));
+    }
+
+    @Test
+    public void of_ignoresTextAndAttributeValues() throws Exception {
+        assertEquals(
+                fingerprint("<some><kind>FOO</kind><of><xml with=\"FOO\"/></of></some>"),
+                fingerprint("<some><kind>BAR</kind><of><xml with=\"BAR\"/></of></some>"));
+    }
+
+    @Test
+    public void of_ignoresAttributeOrderAndWhitespace() throws Exception {
+        assertEquals(
+                fingerprint("<some>\n  <xml and=\"BAR\" with=\"FOO\"/>\n</some>"),
+                fingerprint("<some><xml with=\"attributes\" and=\"other\"/></some>"));
+    }
+
+    @Test
+    public void of_differsForDifferentElementName() throws Exception {
+        assertNotEquals(
+                fingerprint("<some><kind/><of/></some>"),
+                fingerprint("<some><DIFFERENT_kind/><of/></some>"));
+    }
+
+    @Test
+    public void of_differsForDifferentElementOrder() throws Exception {
+        assertNotEquals(
+                fingerprint("<some><kind/><xml/><of/></some>"),
+                fingerprint("<some><kind/><of/><xml/></some>"));
+    }
+
+    @Test
+    public void of_differsForExtraAttribute() throws Exception {
+        assertNotEquals(
+                fingerprint("<some><xml with=\"attributes\" extra=\"EXTRA\"/></some>"),
+                fingerprint("<some><xml with=\"attributes\"/></some>"));
+    }
+
+    @Test
+    public void of_differsForDifferentNesting() throws Exception {
+        assertNotEquals(
+                fingerprint("<some><kind><of/></kind></some>"),
+                fingerprint("<some><kind/><of/></some>"));
+    }
+
+    private long fingerprint(String xml) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(IOUtils.toInputStream(xml, Charset.defaultCharset()));
+        return StructuralFingerprint.of(document);
+    }
+}
@@ -0,0 +1,109 @@
+package com.worldpay.gateway.tokens.wiremock.extension.xml;
+
+import com.worldpay.gateway.tokens.wiremock.extension.xml.XPathCache.CompiledXPath;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathExpressionException;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link XPathCache}.
+ */
+public class XPathCacheTest {
+
+    private XPathCache cache = new XPathCache(XPathCache.MAXIMUM_SIZE);
+
+    @Test
+    public void compile_returnsSameInstanceForSameExpression() {
+        assertSame(cache.compile("/xml/with"), cache.compile("/xml/with"));
+    }
+
+    @Test
+    public void compile_countsHitsAndMisses() {
+        cache.compile("/xml/with");
+        cache.compile("/xml/with");
+        cache.compile("/xml/other");
+
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(2, cache.stats().missCount());
+    }
+
+    @Test
+    public void compile_remembersInvalidExpression() {
+        CompiledXPath compiled = cache.compile("/xml\\with");
+
+        assertFalse(compiled.isValid());
+        assertSame(compiled, cache.compile("/xml\\with"));
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test(expected = XPathExpressionException.class)
+    public void evaluateNodeSet_throwsForInvalidExpression() throws Exception {
+        cache.compile("/xml\\with").evaluateNodeSet(parse("<xml><with/></xml>"));
+    }
+
+    @Test
+    public void evaluateNodeSet_returnsMatchingNodes() throws Exception {
+        CompiledXPath compiled = cache.compile("/xml/with");
+
+        assertTrue(compiled.isValid());
+        assertEquals(2, compiled.evaluateNodeSet(parse("<xml><with/><with/></xml>")).getLength());
+    }
+
+    @Test
+    public void evaluateString_returnsStringValue() throws Exception {
+        CompiledXPath compiled = cache.compile("/xml/with/@some");
+
+        assertEquals("attribute", compiled.evaluateString(parse("<xml><with some='attribute'/></xml>")));
+    }
+
+    @Test
+    public void evaluateString_worksOnOtherThreads() throws Exception {
+        CompiledXPath compiled = cache.compile("/xml/with/@some");
+        Document document = parse("<xml><with some='attribute'/></xml>");
+        AtomicReference<String> result = new AtomicReference<>();
+
+        Thread thread = new Thread(() -> {
+            try {
+                result.set(compiled.evaluateString(document));
+            } catch (XPathExpressionException e) {
+                result.set(e.getMessage());
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertEquals("attribute", result.get());
+    }
+
+    @Test
+    public void compile_isBoundedInSize() {
+        XPathCache small = new XPathCache(2);
+
+        for (int i = 0; i < 10; i++) {
+            small.compile("/xml/element" + i);
+        }
+
+        assertTrue(small.size() <= 2);
+        assertTrue(small.stats().evictionCount() > 0);
+    }
+
+    @Test
+    public void shared_returnsSameCache() {
+        assertSame(XPathCache.shared(), XPathCache.shared());
+    }
+
+    private Document parse(String xml) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(IOUtils.toInputStream(xml, Charset.defaultCharset()));
+    }
+}
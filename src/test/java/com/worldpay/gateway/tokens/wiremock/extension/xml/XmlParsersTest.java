@@ -0,0 +1,66 @@
+package com.worldpay.gateway.tokens.wiremock.extension.xml;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.xpath.XPath;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link XmlParsers}.
+ */
+public class XmlParsersTest {
+
+    @Test
+    public void parse_doesNotLoadExternalDtd() throws Exception {
+        Document document = XmlParsers.parse(new InputSource(new StringReader(
+                "<!DOCTYPE xml PUBLIC \"-//Unresolvable//EN\" \"http://unresolvable.invalid/xml.dtd\"><xml/>")));
+
+        assertEquals("xml", document.getDocumentElement().getNodeName());
+    }
+
+    @Test
+    public void parse_canBeReusedAfterFailure() throws Exception {
+        try {
+            XmlParsers.parse(new InputSource(new StringReader("INVALID XML")));
+        } catch (SAXParseException e) {
+            // expected
+        }
+
+        Document first = XmlParsers.parse(new InputSource(new StringReader("<xml/>")));
+        Document second = XmlParsers.parse(new InputSource(new StringReader("<xml/>")));
+
+        assertNotSame(first, second);
+        assertEquals("xml", second.getDocumentElement().getNodeName());
+    }
+
+    @Test
+    public void xpath_returnsSameResetInstanceOnSameThread() {
+        XPath xpath = XmlParsers.xpath();
+        xpath.setXPathVariableResolver(name -> "value");
+
+        assertSame(xpath, XmlParsers.xpath());
+        assertNull(xpath.getXPathVariableResolver());
+    }
+
+    @Test
+    public void createStreamReader_isNotNamespaceAware() throws Exception {
+        XMLStreamReader reader = XmlParsers.createStreamReader(
+                new ByteArrayInputStream("<ns:xml xmlns:ns='urn:xml'/>".getBytes(StandardCharsets.UTF_8)), null);
+
+        assertEquals(START_ELEMENT, reader.next());
+        assertEquals("ns:xml", reader.getLocalName());
+        reader.close();
+    }
+}
@@ -58,6 +58,11 @@ public class MockRequest implements Request {
         return this;
     }
 
+    public MockRequest body(byte[] body) {
+        this.body = body;
+        return this;
+    }
+
     @Override
     public String getUrl() {
         return url;
@@ -90,7 +95,8 @@ public class MockRequest implements Request {
 
     @Override
     public ContentTypeHeader contentTypeHeader() {
-        return ContentTypeHeader.absent();
+        HttpHeader contentType = header(ContentTypeHeader.KEY);
+        return contentType.isPresent() ? new ContentTypeHeader(contentType.firstValue()) : ContentTypeHeader.absent();
     }
 
     @Override
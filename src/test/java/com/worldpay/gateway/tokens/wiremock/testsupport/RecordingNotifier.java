@@ -0,0 +1,30 @@
+package com.worldpay.gateway.tokens.wiremock.testsupport;
+
+import com.github.tomakehurst.wiremock.common.Notifier;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A {@link Notifier} which keeps what it is told, for checking in tests.
+ */
+public class RecordingNotifier implements Notifier {
+
+    public final List<String> info = new CopyOnWriteArrayList<>();
+    public final List<String> errors = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void info(String message) {
+        info.add(message);
+    }
+
+    @Override
+    public void error(String message) {
+        errors.add(message);
+    }
+
+    @Override
+    public void error(String message, Throwable t) {
+        errors.add(message);
+    }
+}